@@ -0,0 +1,161 @@
+package fr.vergne.condominium.core.parser.mbox;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generate synthetic mbox content, so benchmarks don't rely on private mails.
+ * The same parameters always generate the same content.
+ */
+class MBoxCorpus {
+
+	enum Attachments {
+		/**
+		 * Plain text bodies only.
+		 */
+		NONE,
+		/**
+		 * Alternative plain text and quoted-printable HTML bodies.
+		 */
+		ALTERNATIVE,
+		/**
+		 * Mixed bodies with a base64 PDF attachment.
+		 */
+		PDF,
+	}
+
+	private static final List<String> NAMES = List.of("Alice Martin", "Bob Durand", "Chloé Petit", "David Moreau",
+			"Émilie Laurent", "François Simon");
+	private static final List<String> WORDS = List.of("syndic", "copropriété", "ascenseur", "travaux", "devis",
+			"assemblée", "charges", "facture", "chauffage", "réunion", "toiture", "gardien");
+
+	public static String generate(int mailsCount, Attachments attachments, int attachmentSize) {
+		Random random = new Random(mailsCount);
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < mailsCount; i++) {
+			appendMail(builder, i, random, attachments, attachmentSize);
+		}
+		return builder.toString();
+	}
+
+	private static void appendMail(StringBuilder builder, int index, Random random, Attachments attachments,
+			int attachmentSize) {
+		String sender = pick(random, NAMES);
+		String receiver = pick(random, NAMES);
+		String subject = sentence(random, 5);
+		builder.append("From ").append(index).append("@xxx Mon Jan 02 10:00:00 +0000 2023\n");
+		builder.append("From: \"").append(sender).append("\" <").append(email(sender)).append(">\n");
+		builder.append("To: ").append(receiver).append(" <").append(email(receiver)).append(">, ")
+				.append(email(pick(random, NAMES))).append("\n");
+		builder.append("Subject: ").append(encodedWord(subject)).append("\n");
+		builder.append("Date: Mon, 02 Jan 2023 10:00:00 +0000\n");
+		builder.append("Message-ID: <").append(index).append(".").append(random.nextLong()).append("@xxx>\n");
+		builder.append("MIME-Version: 1.0\n");
+
+		String text = paragraph(random, 10);
+		switch (attachments) {
+		case NONE:
+			builder.append("Content-Type: text/plain; charset=UTF-8\n");
+			builder.append("Content-Transfer-Encoding: 8bit\n");
+			builder.append("\n");
+			builder.append(text).append("\n");
+			break;
+		case ALTERNATIVE:
+			builder.append("Content-Type: multipart/alternative; boundary=\"alt-").append(index).append("\"\n");
+			builder.append("\n");
+			builder.append("--alt-").append(index).append("\n");
+			builder.append("Content-Type: text/plain; charset=UTF-8\n");
+			builder.append("Content-Transfer-Encoding: 8bit\n");
+			builder.append("\n");
+			builder.append(text).append("\n");
+			builder.append("--alt-").append(index).append("\n");
+			builder.append("Content-Type: text/html; charset=UTF-8\n");
+			builder.append("Content-Transfer-Encoding: quoted-printable\n");
+			builder.append("\n");
+			builder.append(quotedPrintable("<html><body><p>" + text + "</p></body></html>")).append("\n");
+			builder.append("--alt-").append(index).append("--\n");
+			break;
+		case PDF:
+			builder.append("Content-Type: multipart/mixed; boundary=\"mix-").append(index).append("\"\n");
+			builder.append("\n");
+			builder.append("--mix-").append(index).append("\n");
+			builder.append("Content-Type: text/plain; charset=UTF-8\n");
+			builder.append("Content-Transfer-Encoding: 8bit\n");
+			builder.append("\n");
+			builder.append(text).append("\n");
+			builder.append("--mix-").append(index).append("\n");
+			builder.append("Content-Type: application/pdf; name=\"doc-").append(index).append(".pdf\"\n");
+			builder.append("Content-Transfer-Encoding: base64\n");
+			builder.append("\n");
+			byte[] pdf = new byte[attachmentSize];
+			random.nextBytes(pdf);
+			builder.append(Base64.getMimeEncoder(76, "\n".getBytes(StandardCharsets.US_ASCII))
+					.encodeToString(pdf)).append("\n");
+			builder.append("--mix-").append(index).append("--\n");
+			break;
+		default:
+			throw new IllegalArgumentException("Not supported: " + attachments);
+		}
+		builder.append("\n");
+	}
+
+	private static String pick(Random random, List<String> values) {
+		return values.get(random.nextInt(values.size()));
+	}
+
+	private static String email(String name) {
+		return name.toLowerCase().replaceAll("[^a-z]+", ".") + "@example.com";
+	}
+
+	private static String sentence(Random random, int wordsCount) {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < wordsCount; i++) {
+			if (i > 0) {
+				builder.append(' ');
+			}
+			builder.append(pick(random, WORDS));
+		}
+		return builder.toString();
+	}
+
+	private static String paragraph(Random random, int linesCount) {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < linesCount; i++) {
+			if (i > 0) {
+				builder.append('\n');
+			}
+			builder.append(sentence(random, 8)).append('.');
+		}
+		return builder.toString();
+	}
+
+	static String encodedWord(String value) {
+		return "=?UTF-8?Q?" + quotedPrintable(value).replace(' ', '_').replace("=\n", "") + "?=";
+	}
+
+	static String quotedPrintable(String value) {
+		StringBuilder builder = new StringBuilder();
+		int lineLength = 0;
+		for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+			String encoded;
+			if (b == '\n') {
+				builder.append('\n');
+				lineLength = 0;
+				continue;
+			} else if (b == '=' || b < 32 || b > 126) {
+				encoded = String.format("=%02X", b & 0xFF);
+			} else {
+				encoded = Character.toString(b);
+			}
+			if (lineLength + encoded.length() > 75) {
+				builder.append("=\n");
+				lineLength = 0;
+			}
+			builder.append(encoded);
+			lineLength += encoded.length();
+		}
+		return builder.toString();
+	}
+}
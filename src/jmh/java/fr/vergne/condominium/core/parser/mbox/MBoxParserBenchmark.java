@@ -0,0 +1,145 @@
+package fr.vergne.condominium.core.parser.mbox;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import fr.vergne.condominium.core.mail.Header;
+import fr.vergne.condominium.core.mail.Mail;
+import fr.vergne.condominium.core.parser.mbox.MBoxCorpus.Attachments;
+
+/**
+ * Benchmark the hot paths of {@link MBoxParser} on synthetic mbox corpora.
+ * Each operation processes the whole corpus, so scores in ops/s are comparable
+ * only between runs of the same parameters. Run with <code>-prof gc</code> to
+ * also measure the allocation rate. The corpus is written in UTF-8, which the
+ * forked JVM uses as default charset for {@link MBoxParser#parseMBox(Path)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dfile.encoding=UTF-8")
+public class MBoxParserBenchmark {
+
+	@Param({ "10", "1000" })
+	int mailsCount;
+
+	@Param({ "NONE", "ALTERNATIVE", "PDF" })
+	Attachments attachments;
+
+	@Param({ "100000" })
+	int attachmentSize;
+
+	private final MBoxParser parser = new MBoxParser(message -> {
+	});
+	private final Function<String, MBoxParser.Address> addressParser = MBoxParser.Address.parser();
+
+	private Path mboxPath;
+	private List<List<String>> mailsLines;
+	private List<String> encodedSubjects;
+	private List<String> addresses;
+	private List<Mail> mails;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		mboxPath = Files.createTempFile("benchmark", ".mbox");
+		Files.writeString(mboxPath, MBoxCorpus.generate(mailsCount, attachments, attachmentSize), UTF_8);
+
+		try (var stream = parser.parseMBox(mboxPath)) {
+			mailsLines = stream.map(Mail::lines).toList();
+		}
+		mails = mailsLines.stream().map(parser::parseMail).toList();
+		encodedSubjects = mails.stream()//
+				.map(mail -> mail.headers().get("Subject").body())//
+				.map(MBoxCorpus::encodedWord)//
+				.toList();
+		addresses = mails.stream()//
+				.flatMap(mail -> mail.headers().get("To").bodies().stream())//
+				.flatMap(to -> List.of(to.split(",")).stream())//
+				.toList();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.delete(mboxPath);
+	}
+
+	@Benchmark
+	public void parseMailFully(Blackhole blackhole) {
+		for (List<String> lines : mailsLines) {
+			Mail mail = parser.parseMail(lines);
+			blackhole.consume(mail.sender());
+			blackhole.consume(mail.headers());
+			blackhole.consume(mail.body().toString());
+		}
+	}
+
+	@Benchmark
+	public void parseMailHeadersOnly(Blackhole blackhole) {
+		for (List<String> lines : mailsLines) {
+			blackhole.consume(parser.parseMail(lines).subject());
+		}
+	}
+
+	@Benchmark
+	public void parseMappedMBox(Blackhole blackhole) {
+		parser.parseMappedMBox(mboxPath).forEach(mail -> blackhole.consume(mail.subject()));
+	}
+
+	@Benchmark
+	public void parseMultipartBody(Blackhole blackhole) {
+		// Parse again to not reuse the cached body
+		for (List<String> lines : mailsLines) {
+			Mail.Body body = parser.parseMail(lines).body();
+			if (body instanceof Mail.Body.Composed composed) {
+				composed.bodies().forEach(blackhole::consume);
+			} else {
+				blackhole.consume(body);
+			}
+		}
+	}
+
+	@Benchmark
+	public void decodeAll(Blackhole blackhole) {
+		for (String subject : encodedSubjects) {
+			blackhole.consume(MBoxParser.Encoding.decodeAll(subject));
+		}
+	}
+
+	@Benchmark
+	public void parseHeaderSymbols(Blackhole blackhole) {
+		for (Mail mail : mails) {
+			Header from = mail.headers().get("From");
+			from.structure().forEach(blackhole::consume);
+		}
+	}
+
+	@Benchmark
+	public void parseAddresses(Blackhole blackhole) {
+		for (String address : addresses) {
+			blackhole.consume(addressParser.apply(address));
+		}
+	}
+}
@@ -65,6 +65,7 @@ import fr.vergne.condominium.core.issue.Issue;
 import fr.vergne.condominium.core.mail.Mail;
 import fr.vergne.condominium.core.mail.Mail.Address;
 import fr.vergne.condominium.core.parser.yaml.IssueYamlSerializer;
+import fr.vergne.condominium.core.repository.CachingRepository;
 import fr.vergne.condominium.core.repository.Repository;
 import fr.vergne.condominium.core.source.Source;
 import fr.vergne.condominium.core.source.Source.Refiner;
@@ -96,7 +97,8 @@ public class Gui extends JFrame {
 						System.out.println("Load mails from: " + outFolderConf);
 						Path outFolderPath = Paths.get(outFolderConf);
 						Path mailRepositoryPath = outFolderPath.resolve("mails");
-						return Main.createMailRepository(mailRepositoryPath);
+						// Navigating between mails requests the same ones repeatedly
+						return CachingRepository.over(Main.createMailRepository(mailRepositoryPath), 1000);
 					});
 		});
 		record Context(Serializer<Issue, String> issueSerializer, Function<MailId, Source<Mail>> mailTracker,
@@ -161,7 +163,7 @@ public class Gui extends JFrame {
 
 					Repository.Updatable<IssueId, Issue> issueRepository = Main
 							.createIssueRepository(issueRepositoryPath, issueSerializer);
-					return issueRepository;
+					return CachingRepository.overUpdatable(issueRepository, 1000);
 				});
 			});
 		});
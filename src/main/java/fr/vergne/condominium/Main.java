@@ -5,8 +5,8 @@ import static java.nio.file.Files.find;
 import static java.nio.file.Files.isRegularFile;
 import static java.util.stream.Collectors.joining;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.ZoneId;
@@ -14,9 +14,9 @@ import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
 import java.util.Comparator;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -39,10 +39,12 @@ import fr.vergne.condominium.core.parser.yaml.PlotConfiguration;
 import fr.vergne.condominium.core.parser.yaml.ProfilesConfiguration;
 import fr.vergne.condominium.core.repository.FileRepository;
 import fr.vergne.condominium.core.repository.MemoryRepository;
+import fr.vergne.condominium.core.repository.PathLayout;
 import fr.vergne.condominium.core.repository.Repository;
 import fr.vergne.condominium.core.repository.RepositoryDiff;
 import fr.vergne.condominium.core.repository.RepositoryDiff.ResourceDiff.Action;
 import fr.vergne.condominium.core.repository.RepositoryDiff.ResourceDiff.Values;
+import fr.vergne.condominium.core.repository.SegmentRepository;
 import fr.vergne.condominium.core.source.Source;
 import fr.vergne.condominium.core.source.Source.Refiner;
 import fr.vergne.condominium.core.util.RefinerIdSerializer;
@@ -62,16 +64,18 @@ public class Main {
 		Path confPlotCsPath = confFolderPath.resolve("plotCs.yaml");
 		Path confPlotSyndicPath = confFolderPath.resolve("plotSyndic.yaml");
 		Path historyScriptPath = outFolderPath.resolve("graph.plantuml");
-		Path historyPath = outFolderPath.resolve("graph.svg");
+		Path historyPath = outFolderPath.resolve("graph.html");
 		Path plotCsPath = outFolderPath.resolve("graph2.png");
 		Path plotSyndicPath = outFolderPath.resolve("graph3.png");
 		Path mailRepositoryPath = outFolderPath.resolve("mails");
+		Path mboxIndexPath = outFolderPath.resolve("mbox.index");
+		Path mailJournalPath = mailJournalPath(mailRepositoryPath);
 		Path issueRepositoryPath = outFolderPath.resolve("issues");
 
-		Repository<MailId, Mail> mailRepository = createMailRepository(mailRepositoryPath);
+		FileRepository<MailId, Mail> mailRepository = createMailRepository(mailRepositoryPath);
 
 		LOGGER.accept("--- UPDATE ---");
-//		updateMailsExceptRemovals(loadMBox(mboxPath, confMailCleaningPath), mailRepository);
+//		updateMailsSinceLastImport(mboxPath, mboxIndexPath, confMailCleaningPath, mailRepository, mailJournalPath);
 		LOGGER.accept("--- /UPDATE ---");
 
 		Source.Tracker sourceTracker = Source.Tracker.create(Source::create, Source.Refiner::create);
@@ -87,7 +91,11 @@ public class Main {
 		Repository.Updatable<IssueId, Issue> issueRepository = createIssueRepository(issueRepositoryPath,
 				issueSerializer);
 		LOGGER.accept("=================");
-		List<Mail> mails = mailRepository.streamResources().toList();
+		// All the mails are aggregated, so read them ahead and keep only their headers
+		List<Mail> mails;
+		try (Stream<Mail> mailStream = mailRepository.streamResourcesWithReadAhead(64, headersMailReader())) {
+			mails = mailStream.toList();
+		}
 		{
 			LOGGER.accept("Associate mails to issues");
 			// TODO Notify issue with email attachment
@@ -139,7 +147,9 @@ public class Main {
 			// TODO Filter on mail predicate
 			LOGGER.accept("Create mail history");
 			MailHistory.Factory mailHistoryFactory = new MailHistory.Factory.WithPlantUml(confProfiles, LOGGER);
-			MailHistory mailHistory = mailHistoryFactory.create(mails);
+			int historyParallelism = Runtime.getRuntime().availableProcessors();
+			MailHistory mailHistory = mailHistoryFactory.create(mails, MailHistory.Windowing.perMonth(),
+					historyParallelism);
 			mailHistory.writeScript(historyScriptPath);
 			mailHistory.writeSvg(historyPath);
 			LOGGER.accept("Done");
@@ -216,18 +226,10 @@ public class Main {
 		} catch (IOException cause) {
 			throw new RuntimeException("Cannot create issue repository directory: " + repositoryPath, cause);
 		}
-		Function<IssueId, Path> pathResolver = (id) -> {
-			String datePart = DateTimeFormatter.ISO_LOCAL_DATE.format(id.dateTime()).replace('-', File.separatorChar);
-			Path dayDirectory = repositoryPath.resolve(datePart);
-			try {
-				createDirectories(dayDirectory);
-			} catch (IOException cause) {
-				throw new RuntimeException("Cannot create issue directory: " + dayDirectory, cause);
-			}
-
-			String timePart = DateTimeFormatter.ISO_LOCAL_TIME.format(id.dateTime()).replace(':', '-');
-			return dayDirectory.resolve(timePart + extension);
-		};
+		PathLayout<IssueId> layout = PathLayout.sharded(//
+				PathLayout.dateShard(IssueId::dateTime, "uuuu/MM/dd"), //
+				id -> DateTimeFormatter.ISO_LOCAL_TIME.format(id.dateTime()).replace(':', '-') + extension);
+		Function<IssueId, Path> pathResolver = layout.in(repositoryPath);
 		Supplier<Stream<Path>> pathFinder = () -> {
 			try {
 				return find(repositoryPath, Integer.MAX_VALUE, (path, attr) -> {
@@ -244,9 +246,46 @@ public class Main {
 		);
 	}
 
+	private static void updateMailsSinceLastImport(Path mboxPath, Path mboxIndexPath, Path confMailCleaningPath,
+			FileRepository<MailId, Mail> mailRepository, Path mailJournalPath) {
+		MBoxParser parser = new MBoxParser(LOGGER);
+		MBoxParser.Increment increment = parser.parseMappedMBoxIncrement(mboxPath, mboxIndexPath);
+		Repository<MailId, Mail> mboxRepository;
+		try (Stream<Mail> mails = increment.mails()) {
+			mboxRepository = loadMails(mails, confMailCleaningPath);
+		}
+		applyExceptRemovals(RepositoryDiff.ofUpdates(mailRepository, mboxRepository),
+				mailRepository.openSession(mailJournalPath));
+		increment.commit();
+	}
+
 	private static void updateMailsExceptRemovals(Repository<MailId, Mail> mboxRepository,
+			FileRepository<MailId, Mail> mailRepository, Path mailJournalPath) {
+		// Both repositories provide their mails in the order of the mail files
+		RepositoryDiff<MailId, Mail> repositoryDiff = RepositoryDiff.ofSorted(mailRepository,
+				Repository.Fingerprinted.computing(mboxRepository, mailSerializer()), mailIdOrder());
+		applyExceptRemovals(repositoryDiff, mailRepository.openSession(mailJournalPath));
+	}
+
+	/**
+	 * Apply the diffs in a single {@link Repository.Session}, so either all of
+	 * them are stored or none.
+	 */
+	private static void applyExceptRemovals(RepositoryDiff<MailId, Mail> repositoryDiff,
+			Repository.Session<MailId, Mail> mailSession) {
+		Repository<MailId, Mail> mailRepository = mailSession.repository();
+		try {
+			applyExceptRemovals(repositoryDiff, mailRepository);
+		} catch (RuntimeException cause) {
+			mailSession.rollback();
+			throw cause;
+		}
+		mailSession.commit();
+	}
+
+	private static void applyExceptRemovals(RepositoryDiff<MailId, Mail> repositoryDiff,
 			Repository<MailId, Mail> mailRepository) {
-		RepositoryDiff.of(mailRepository, mboxRepository)//
+		repositoryDiff//
 				.stream()//
 				.peek(diff -> {
 					Values<MailId, Mail> values = diff.values();
@@ -270,14 +309,19 @@ public class Main {
 
 	private static Repository<MailId, Mail> loadMBox(Path mboxPath, Path confMailCleaningPath) {
 		MBoxParser parser = new MBoxParser(LOGGER);
+		try (Stream<Mail> mails = parser.parseMappedMBox(mboxPath)) {
+			return loadMails(mails, confMailCleaningPath);
+		}
+	}
+
+	private static Repository<MailId, Mail> loadMails(Stream<Mail> mails, Path confMailCleaningPath) {
 		MailCleaningConfiguration confMailCleaning = MailCleaningConfiguration.parser().apply(confMailCleaningPath);
-		Repository<MailId, Mail> mboxRepository = new MemoryRepository<>(MailId::fromMail, new LinkedHashMap<>());
-		parser.parseMBox(mboxPath)//
+		Repository<MailId, Mail> mboxRepository = new MemoryRepository<>(MailId::fromMail, new TreeMap<>(mailIdOrder()));
+		mails.parallel()//
 				.filter(on(confMailCleaning))//
 				// .limit(40)// TODO Remove
-				.peek(displayMailOn(LOGGER))//
 				// .sorted(comparing(Mail::receivedDate))//
-				.forEach(mboxRepository::add);
+				.forEachOrdered(displayMailOn(LOGGER).andThen(mboxRepository::add));
 		return mboxRepository;
 	}
 
@@ -288,16 +332,35 @@ public class Main {
 		public static MailId fromMail(Mail mail) {
 			return new MailId(mail.receivedDate(), mail.sender().email());
 		}
-	}
 
-	static FileRepository<MailId, Mail> createMailRepository(Path repositoryPath) {
-		Function<Mail, MailId> identifier = MailId::fromMail;
+		public static Serializer<MailId, String> serializer() {
+			DateTimeFormatter formatter = DateTimeFormatter.ISO_ZONED_DATE_TIME;
+			return new Serializer<>() {
 
-		MBoxParser repositoryParser = new MBoxParser(LOGGER);
-		Function<Mail, byte[]> resourceSerializer = (mail) -> {
+				@Override
+				public String serialize(MailId id) {
+					return formatter.format(id.datetime) + " " + id.sender;
+				}
+
+				@Override
+				public MailId deserialize(String serial) {
+					int separatorIndex = serial.indexOf(' ');
+					ZonedDateTime datetime = ZonedDateTime.parse(serial.substring(0, separatorIndex), formatter);
+					return new MailId(datetime, serial.substring(separatorIndex + 1));
+				}
+			};
+		}
+	}
+
+	private static Function<Mail, byte[]> mailSerializer() {
+		return (mail) -> {
 			return mail.lines().stream().collect(joining("\n")).getBytes();
 		};
-		Function<Supplier<byte[]>, Mail> resourceDeserializer = (bytesSupplier) -> {
+	}
+
+	private static Function<Supplier<byte[]>, Mail> mailDeserializer() {
+		MBoxParser repositoryParser = new MBoxParser(LOGGER);
+		return (bytesSupplier) -> {
 			return new SoftReferencedMail(() -> {
 				byte[] bytes = bytesSupplier.get();
 				// Use split with negative limit to retain empty strings
@@ -305,6 +368,68 @@ public class Main {
 				return repositoryParser.parseMail(lines);
 			});
 		};
+	}
+
+	private static FileRepository.ResourceWriter<Mail> mailWriter() {
+		return (mail, output) -> {
+			output.write(mail.lines().stream().collect(joining("\n")).getBytes());
+		};
+	}
+
+	private static Function<Supplier<InputStream>, Mail> mailReader() {
+		MBoxParser repositoryParser = new MBoxParser(LOGGER);
+		return (streamSupplier) -> {
+			// Parse the headers only, the body is read from the file if requested
+			return new SoftReferencedMail(() -> repositoryParser.parseMailLines(streamSupplier));
+		};
+	}
+
+	private static Function<Supplier<InputStream>, Mail> headersMailReader() {
+		MBoxParser repositoryParser = new MBoxParser(LOGGER);
+		// Parse the headers right away, the body is read from the file if requested
+		return repositoryParser::parseMailLines;
+	}
+
+	/**
+	 * Create a mail {@link Repository} storing all the mails in a few segment
+	 * files, rather than one file per mail like
+	 * {@link #createMailRepository(Path)}.
+	 */
+	static SegmentRepository<MailId, Mail> createMailSegmentRepository(Path repositoryPath) {
+		long maxSegmentSize = 256L * 1024 * 1024;
+		return SegmentRepository.overBytes(//
+				MailId::fromMail, //
+				mailSerializer(), mailDeserializer(), //
+				MailId.serializer(), //
+				repositoryPath, maxSegmentSize);
+	}
+
+	private static PathLayout<MailId> mailLayout() {
+		return PathLayout.sharded(//
+				PathLayout.dateShard(MailId::datetime, "uuuu/MM/dd"), //
+				id -> {
+					String timePart = DateTimeFormatter.ISO_LOCAL_TIME.format(id.datetime).replace(':', '-');
+					String addressPart = id.sender.replaceAll("[^a-zA-Z0-9]+", "-");
+					return timePart + "_" + addressPart + ".mail";
+				});
+	}
+
+	/**
+	 * @return the order of the mails in the {@link Repository} created by
+	 *         {@link #createMailRepository(Path)}, which lists its files in
+	 *         alphabetical order
+	 */
+	static Comparator<MailId> mailIdOrder() {
+		return Comparator.comparing(mailLayout()::relativePath)//
+				// Distinguish the IDs sharing the same file
+				.thenComparing(MailId::sender)//
+				.thenComparing(MailId::datetime);
+	}
+
+	static FileRepository<MailId, Mail> createMailRepository(Path repositoryPath) {
+		Function<Mail, MailId> identifier = MailId::fromMail;
+		FileRepository.ResourceWriter<Mail> resourceWriter = mailWriter();
+		Function<Supplier<InputStream>, Mail> resourceReader = mailReader();
 
 		String extension = ".mail";
 		try {
@@ -312,19 +437,7 @@ public class Main {
 		} catch (IOException cause) {
 			throw new RuntimeException("Cannot create mail repository directory: " + repositoryPath, cause);
 		}
-		Function<MailId, Path> pathResolver = (id) -> {
-			String datePart = DateTimeFormatter.ISO_LOCAL_DATE.format(id.datetime).replace('-', File.separatorChar);
-			Path dayDirectory = repositoryPath.resolve(datePart);
-			try {
-				createDirectories(dayDirectory);
-			} catch (IOException cause) {
-				throw new RuntimeException("Cannot create mail directory: " + dayDirectory, cause);
-			}
-
-			String timePart = DateTimeFormatter.ISO_LOCAL_TIME.format(id.datetime).replace(':', '-');
-			String addressPart = id.sender.replaceAll("[^a-zA-Z0-9]+", "-");
-			return dayDirectory.resolve(timePart + "_" + addressPart + extension);
-		};
+		Function<MailId, Path> pathResolver = mailLayout().in(repositoryPath);
 		Supplier<Stream<Path>> pathFinder = () -> {
 			try {
 				return find(repositoryPath, Integer.MAX_VALUE, (path, attr) -> {
@@ -335,10 +448,25 @@ public class Main {
 			}
 		};
 
-		return FileRepository.overBytes(//
+		// Index the mail IDs, so listing them does not parse all the mails
+		Path keyIndexPath = repositoryPath.resolve("mailIds.index");
+
+		FileRepository<MailId, Mail> repository = FileRepository.overStreams(//
 				identifier, //
-				resourceSerializer, resourceDeserializer, //
-				pathResolver, pathFinder);
+				resourceWriter, resourceReader, //
+				pathResolver, pathFinder, //
+				MailId.serializer(), keyIndexPath);
+		// Complete any interrupted import before to read anything
+		repository.recover(mailJournalPath(repositoryPath));
+		return repository;
+	}
+
+	/**
+	 * @return the journal of the sessions of the mail repository, next to its
+	 *         directory
+	 */
+	static Path mailJournalPath(Path repositoryPath) {
+		return repositoryPath.resolveSibling(repositoryPath.getFileName() + ".journal");
 	}
 
 	public static Mail.Body.Textual getPlainOrHtmlBody(Mail mail) {
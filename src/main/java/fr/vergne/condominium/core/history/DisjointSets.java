@@ -0,0 +1,51 @@
+package fr.vergne.condominium.core.history;
+
+/**
+ * Disjoint sets of the integers from 0 to <code>size - 1</code>, each integer
+ * starting alone in its set. Merging two sets and finding the set of an integer
+ * are done in almost constant time, thanks to union by size and path halving.
+ */
+class DisjointSets {
+
+	private final int[] parents;
+	private final int[] sizes;
+
+	DisjointSets(int size) {
+		this.parents = new int[size];
+		this.sizes = new int[size];
+		for (int i = 0; i < size; i++) {
+			parents[i] = i;
+			sizes[i] = 1;
+		}
+	}
+
+	/**
+	 * @return the representative of the set of the integer, which is the same for
+	 *         all the integers of this set
+	 */
+	int find(int i) {
+		while (parents[i] != i) {
+			parents[i] = parents[parents[i]];
+			i = parents[i];
+		}
+		return i;
+	}
+
+	/**
+	 * Merge the sets of both integers.
+	 */
+	void union(int i, int j) {
+		int rootI = find(i);
+		int rootJ = find(j);
+		if (rootI == rootJ) {
+			return;
+		}
+		if (sizes[rootI] < sizes[rootJ]) {
+			int swap = rootI;
+			rootI = rootJ;
+			rootJ = swap;
+		}
+		parents[rootJ] = rootI;
+		sizes[rootI] += sizes[rootJ];
+	}
+}
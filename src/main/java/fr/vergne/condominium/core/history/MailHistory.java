@@ -1,38 +1,49 @@
 package fr.vergne.condominium.core.history;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 import static java.time.format.DateTimeFormatter.ISO_LOCAL_DATE;
 import static java.time.format.DateTimeFormatter.ISO_LOCAL_TIME;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableMap;
 import static java.util.Collections.unmodifiableSet;
 import static java.util.Comparator.comparing;
-import static java.util.stream.Collectors.counting;
 import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toMap;
 
-import java.io.ByteArrayOutputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.PrintStream;
-import java.nio.charset.Charset;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.net.URLEncoder;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeFormatterBuilder;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
-import java.util.function.BiPredicate;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -41,25 +52,112 @@ import java.util.function.UnaryOperator;
 import java.util.stream.Stream;
 
 import fr.vergne.condominium.core.Profile;
+import fr.vergne.condominium.core.issue.Issue;
 import fr.vergne.condominium.core.mail.Mail;
 import fr.vergne.condominium.core.parser.yaml.Filter;
 import fr.vergne.condominium.core.parser.yaml.ProfilesConfiguration;
+import fr.vergne.condominium.core.repository.Fingerprint;
 import net.sourceforge.plantuml.FileFormat;
 import net.sourceforge.plantuml.FileFormatOption;
-import net.sourceforge.plantuml.SourceStringReader;
+import net.sourceforge.plantuml.GeneratedImage;
+import net.sourceforge.plantuml.SourceFileReader;
+import net.sourceforge.plantuml.preproc.Defines;
 
 public interface MailHistory {
 	void writeScript(Path path);
 
 	void writeSvg(Path path);
 
+	/**
+	 * A {@link Windowing} splits the timeline of the mails into windows, each
+	 * rendered as its own diagram. Windows are ordered, and named to be usable in
+	 * file names.
+	 */
+	public interface Windowing {
+		Map<String, List<Mail>> split(List<Mail> mails);
+
+		/**
+		 * @return a {@link Windowing} with a window per month, named like
+		 *         <code>2023-01</code>
+		 */
+		public static Windowing perMonth() {
+			DateTimeFormatter formatter = DateTimeFormatter.ofPattern("uuuu-MM");
+			return mails -> mails.stream().collect(groupingBy(//
+					mail -> formatter.format(mail.receivedDate()), //
+					TreeMap::new, //
+					toList()//
+			));
+		}
+
+		/**
+		 * New mails only change the last window, as long as they are more recent
+		 * than the previous ones.
+		 * 
+		 * @param count the number of mails per window
+		 * @return a {@link Windowing} with a window per <code>count</code> mails,
+		 *         sorted by date and named by their position like <code>0001</code>
+		 */
+		public static Windowing perCount(int count) {
+			if (count < 1) {
+				throw new IllegalArgumentException("Count must be strictly positive: " + count);
+			}
+			return mails -> {
+				List<Mail> sortedMails = mails.stream().sorted(comparing(Mail::receivedDate)).toList();
+				Map<String, List<Mail>> windows = new LinkedHashMap<>();
+				for (int start = 0; start < sortedMails.size(); start += count) {
+					int end = Math.min(start + count, sortedMails.size());
+					windows.put(String.format("%04d", start / count + 1), sortedMails.subList(start, end));
+				}
+				return windows;
+			};
+		}
+
+		/**
+		 * Mails which are not part of any {@link Issue} are not rendered, while
+		 * mails part of several {@link Issue}s are rendered in each of them.
+		 * 
+		 * @param mailIssues the {@link Issue}s each mail is part of
+		 * @return a {@link Windowing} with a window per {@link Issue}, named after
+		 *         its title
+		 */
+		public static Windowing perIssue(Function<Mail, Stream<Issue>> mailIssues) {
+			return mails -> {
+				Map<Issue, List<Mail>> issuesMails = new LinkedHashMap<>();
+				mails.forEach(mail -> {
+					mailIssues.apply(mail).forEach(issue -> {
+						issuesMails.computeIfAbsent(issue, key -> new ArrayList<>()).add(mail);
+					});
+				});
+				Map<String, List<Mail>> windows = new LinkedHashMap<>();
+				issuesMails.forEach((issue, issueMails) -> {
+					String name = issue.title().replaceAll("[^\\w.-]", "_");
+					// Several issues may have the same title
+					String uniqueName = name;
+					for (int index = 2; windows.containsKey(uniqueName); index++) {
+						uniqueName = name + "-" + index;
+					}
+					windows.put(uniqueName, issueMails);
+				});
+				return windows;
+			};
+		}
+	}
+
 	public interface Factory {
 		MailHistory create(List<Mail> mails);
 
+		/**
+		 * Create a {@link MailHistory} rendering each window of the mails as its own
+		 * diagram, rather than all the mails in a single huge one.
+		 * 
+		 * @param windowing   the way to split the mails into windows
+		 * @param parallelism the maximum number of windows rendered at the same time
+		 */
+		MailHistory create(List<Mail> mails, Windowing windowing, int parallelism);
+
 		public static class WithPlantUml implements Factory {
 
-			private final Consumer<Mail.Address> profilesFeeder;
-			private final Supplier<Collection<Profile>> profilesSupplier;
+			private final Map<String, Profile> confEmailProfiles;
 			private final UnaryOperator<Collection<Profile>> profilesReducer;
 			private final String newline = "\\n";// Escaped to be interpreted by PlantUml
 			private final Consumer<Object> logger;
@@ -69,31 +167,16 @@ public interface MailHistory {
 			public WithPlantUml(ProfilesConfiguration confProfiles, Consumer<Object> logger) {
 				this.logger = logger;
 
-				Map<String, Profile> emailProfiles = new HashMap<>();
+				Map<String, Profile> emailProfiles = new LinkedHashMap<>();
 				confProfiles.getIndividuals().stream().forEach(confProfile -> {
-					Set<String> names = new LinkedHashSet<>(confProfile.getNames());
-					Set<String> emails = new LinkedHashSet<>(confProfile.getEmails());
+					Set<String> names = unmodifiableSet(new LinkedHashSet<>(confProfile.getNames()));
+					Set<String> emails = unmodifiableSet(new LinkedHashSet<>(confProfile.getEmails()));
 					Profile.Base profile = new Profile.Base(names, emails);
 					emails.forEach(email -> {
 						emailProfiles.put(email, profile);
 					});
 				});
-				this.profilesFeeder = address -> {
-					Set<String> names = new LinkedHashSet<>();
-					address.name().ifPresent(names::add);
-					Set<String> emails = new LinkedHashSet<>();
-					emails.add(address.email());
-					emailProfiles.compute(address.email(), (k, v) -> {
-						if (v != null) {
-							names.addAll(v.names());
-							emails.addAll(v.emails());
-						}
-						return new Profile.Base(unmodifiableSet(names), unmodifiableSet(emails));
-					});
-				};
-				this.profilesSupplier = () -> {
-					return new LinkedHashSet<>(emailProfiles.values());
-				};
+				this.confEmailProfiles = unmodifiableMap(emailProfiles);
 
 				UnaryOperator<Collection<Profile>> cleaning = combine(createCleaningReducers());
 				UnaryOperator<Collection<Profile>> grouping = combine(createGroupsReducers(confProfiles));
@@ -104,50 +187,236 @@ public interface MailHistory {
 			public MailHistory create(List<Mail> mails) {
 				return new MailHistory() {
 
+					private Aggregation aggregation;
+
+					/**
+					 * Aggregate the mails on first use only, so all the formats are
+					 * rendered from the same {@link Aggregation}.
+					 */
+					private synchronized Aggregation aggregation() {
+						if (aggregation == null) {
+							aggregation = aggregate(mails);
+						}
+						return aggregation;
+					}
+
 					@Override
 					public void writeScript(Path path) {
-						logger.accept("Prepare profiles");
-						Collection<Profile> profiles = createProfiles(mails);
+						Aggregation aggregation = aggregation();
 
 						logger.accept("Redact script");
-						String script = createPlantUml(profiles, mails);
+						writeScriptFile(path, scriptWriter -> writePlantUml(aggregation, scriptWriter));
+					}
+
+					@Override
+					public void writeSvg(Path svgPath) {
+						Aggregation aggregation = aggregation();
 
+						Path workPath;
 						try {
-							Files.writeString(path, script);
+							workPath = Files.createTempDirectory(svgPath.toAbsolutePath().getParent(), "history");
 						} catch (IOException cause) {
-							throw new RuntimeException("Cannot write script", cause);
+							throw new RuntimeException("Cannot create work directory for: " + svgPath, cause);
+						}
+						Path scriptPath = workPath.resolve("history.plantuml");
+						try {
+							logger.accept("Redact script");
+							writeScriptFile(scriptPath, scriptWriter -> writePlantUml(aggregation, scriptWriter));
+
+							logger.accept("Generate SVG");
+							renderSvg(scriptPath, svgPath);
+						} catch (RuntimeException cause) {
+							deleteRecursively(workPath).ifPresent(cause::addSuppressed);
+							throw cause;
 						}
+						deleteRecursively(workPath).ifPresent(cause -> {
+							logger.accept("Cannot delete work directory " + workPath + ": " + cause);
+						});
+					}
+				};
+			}
+
+			/**
+			 * The script has a diagram per window. The SVG path receives an HTML index
+			 * page linking to the SVG of each window, stored next to it. Each SVG comes
+			 * with the {@link Fingerprint} of its script, so a window is rendered again
+			 * only if its script changed.
+			 */
+			@Override
+			public MailHistory create(List<Mail> mails, Windowing windowing, int parallelism) {
+				if (parallelism < 1) {
+					throw new IllegalArgumentException("Parallelism must be strictly positive: " + parallelism);
+				}
+				return new MailHistory() {
+
+					private Map<String, Aggregation> aggregations;
+
+					/**
+					 * Aggregate the windows on first use only, with the same actors for all
+					 * of them.
+					 */
+					private synchronized Map<String, Aggregation> aggregations() {
+						if (aggregations == null) {
+							logger.accept("Prepare profiles");
+							Collection<Profile> profiles = createProfiles(mails);
+							Collection<Actor> actors = createActors(profiles);
+							Function<Mail.Address, Actor> addressToActor = createAddressToActor(actors);
+
+							logger.accept("Aggregate windows");
+							Map<String, Aggregation> windowsAggregations = new LinkedHashMap<>();
+							windowing.split(mails).forEach((window, windowMails) -> {
+								windowsAggregations.put(window, aggregate(actors, addressToActor, windowMails));
+							});
+							aggregations = unmodifiableMap(windowsAggregations);
+						}
+						return aggregations;
 					}
 
 					@Override
-					public void writeSvg(Path svgPath) {
-						logger.accept("Prepare profiles");
-						Collection<Profile> profiles = createProfiles(mails);
+					public void writeScript(Path path) {
+						Map<String, Aggregation> aggregations = aggregations();
 
 						logger.accept("Redact script");
-						String script = createPlantUml(profiles, mails);
+						writeScriptFile(path, scriptWriter -> {
+							aggregations.forEach((window, aggregation) -> {
+								scriptWriter.println("' Window " + window);
+								writePlantUml(aggregation, scriptWriter);
+							});
+						});
+					}
+
+					@Override
+					public void writeSvg(Path indexPath) {
+						Map<String, Aggregation> aggregations = aggregations();
+
+						Path directory = indexPath.toAbsolutePath().getParent();
+						String indexName = indexPath.getFileName().toString();
+						String baseName = indexName.contains(".") //
+								? indexName.substring(0, indexName.lastIndexOf('.')) //
+								: indexName;
+						Map<String, Path> svgPaths = new LinkedHashMap<>();
+						aggregations.keySet().forEach(window -> {
+							svgPaths.put(window, directory.resolve(baseName + "-" + window + ".svg"));
+						});
 
-						logger.accept("Generate SVG");
-						SourceStringReader reader = new SourceStringReader(script);
-						FileOutputStream graphStream;
+						Path workPath;
 						try {
-							graphStream = new FileOutputStream(svgPath.toFile());
-						} catch (FileNotFoundException cause) {
-							throw new RuntimeException("Cannot find: " + svgPath, cause);
+							workPath = Files.createTempDirectory(directory, "history");
+						} catch (IOException cause) {
+							throw new RuntimeException("Cannot create work directory for: " + indexPath, cause);
 						}
-						String desc;
+						ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+						List<Future<?>> renderings = new ArrayList<>();
 						try {
-							desc = reader.outputImage(graphStream, new FileFormatOption(FileFormat.SVG))
-									.getDescription();
-						} catch (IOException cause) {
-							throw new RuntimeException("Cannot write SVG", cause);
+							aggregations.forEach((window, aggregation) -> {
+								renderings.add(executor.submit(() -> {
+									renderWindow(window, aggregation, workPath, svgPaths.get(window));
+								}));
+							});
+							for (Future<?> rendering : renderings) {
+								try {
+									rendering.get();
+								} catch (InterruptedException cause) {
+									Thread.currentThread().interrupt();
+									throw new RuntimeException("Cannot wait for windows rendering", cause);
+								} catch (ExecutionException cause) {
+									throw new RuntimeException("Cannot render windows", cause.getCause());
+								}
+							}
+						} catch (RuntimeException cause) {
+							renderings.forEach(rendering -> rendering.cancel(true));
+							// The remaining renderings use the work directory until they stop
+							awaitTermination(executor);
+							deleteRecursively(workPath).ifPresent(cause::addSuppressed);
+							throw cause;
 						}
-						logger.accept(desc);
+						executor.shutdown();
+						deleteRecursively(workPath).ifPresent(cause -> {
+							logger.accept("Cannot delete work directory " + workPath + ": " + cause);
+						});
+
+						logger.accept("Write index");
+						writeIndex(indexPath, svgPaths);
 					}
 				};
 			}
 
+			private void renderWindow(String window, Aggregation aggregation, Path workPath, Path svgPath) {
+				Path scriptPath = workPath.resolve(window + ".plantuml");
+				Path fingerprintPath = svgPath.resolveSibling(svgPath.getFileName() + ".sha256");
+				try {
+					writeScriptFile(scriptPath, scriptWriter -> writePlantUml(aggregation, scriptWriter));
+					String fingerprint;
+					try (InputStream scriptStream = Files.newInputStream(scriptPath)) {
+						fingerprint = Fingerprint.serializer().serialize(Fingerprint.of(scriptStream));
+					}
+					if (Files.exists(svgPath) && Files.exists(fingerprintPath)
+							&& Files.readString(fingerprintPath).equals(fingerprint)) {
+						logger.accept("Keep unchanged window " + window);
+						return;
+					}
+
+					logger.accept("Generate SVG of window " + window);
+					renderSvg(scriptPath, svgPath);
+					Files.writeString(fingerprintPath, fingerprint);
+				} catch (IOException cause) {
+					throw new RuntimeException("Cannot render window " + window, cause);
+				}
+			}
+
+			/**
+			 * Wait for the tasks of the executor to finish, however long they take.
+			 */
+			private void awaitTermination(ExecutorService executor) {
+				executor.shutdown();
+				try {
+					while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+						logger.accept("Wait for the remaining windows rendering");
+					}
+				} catch (InterruptedException cause) {
+					Thread.currentThread().interrupt();
+				}
+			}
+
+			private void writeIndex(Path indexPath, Map<String, Path> svgPaths) {
+				try (PrintWriter indexWriter = new PrintWriter(Files.newBufferedWriter(indexPath, UTF_8))) {
+					indexWriter.println("<!DOCTYPE html>");
+					indexWriter.println("<html>");
+					indexWriter.println("<head><meta charset=\"UTF-8\"><title>Mail history</title></head>");
+					indexWriter.println("<body>");
+					indexWriter.println("<ul>");
+					svgPaths.forEach((window, svgPath) -> {
+						String link = URLEncoder.encode(svgPath.getFileName().toString(), UTF_8).replace("+", "%20");
+						String name = window.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+						indexWriter.println("<li><a href=\"" + link + "\">" + name + "</a></li>");
+					});
+					indexWriter.println("</ul>");
+					indexWriter.println("</body>");
+					indexWriter.println("</html>");
+					if (indexWriter.checkError()) {
+						throw new RuntimeException("Cannot write index: " + indexPath);
+					}
+				} catch (IOException cause) {
+					throw new RuntimeException("Cannot write index: " + indexPath, cause);
+				}
+			}
+
 			private Collection<Profile> createProfiles(List<Mail> mails) {
+				// Feed a copy, so the configured profiles remain the same for each history
+				Map<String, Profile> emailProfiles = new LinkedHashMap<>(confEmailProfiles);
+				Consumer<Mail.Address> profilesFeeder = address -> {
+					Set<String> names = new LinkedHashSet<>();
+					address.name().ifPresent(names::add);
+					Set<String> emails = new LinkedHashSet<>();
+					emails.add(address.email());
+					emailProfiles.compute(address.email(), (k, v) -> {
+						if (v != null) {
+							names.addAll(v.names());
+							emails.addAll(v.emails());
+						}
+						return new Profile.Base(unmodifiableSet(names), unmodifiableSet(emails));
+					});
+				};
 				mails.stream()//
 						.forEach(mail -> {
 							profilesFeeder.accept(mail.sender());
@@ -155,7 +424,7 @@ public interface MailHistory {
 //							mail.lines().forEach(System.out::println);
 						});
 
-				Collection<Profile> profiles = profilesReducer.apply(profilesSupplier.get());
+				Collection<Profile> profiles = profilesReducer.apply(new LinkedHashSet<>(emailProfiles.values()));
 
 				return profiles;
 			}
@@ -173,49 +442,55 @@ public interface MailHistory {
 				}
 			}
 
-			private String createPlantUml(Collection<Profile> profiles, List<Mail> mails) {
+			/**
+			 * A mail from an actor to another one, the same mail giving an
+			 * {@link Edge} per receiving actor.
+			 */
+			record Edge(Actor sender, Actor receiver, ZonedDateTime date, String subject) {
+			}
+
+			/**
+			 * Everything the formats need to render the history: the actors, sorted by
+			 * decreasing activity, and the {@link Edge}s, sorted by date. It is
+			 * immutable, so it can be rendered as many times as needed.
+			 */
+			record Aggregation(List<Actor> actors, Map<Actor, Actor.Activity> activities, List<Edge> edges) {
+			}
+
+			private Aggregation aggregate(List<Mail> mails) {
+				logger.accept("Prepare profiles");
+				Collection<Profile> profiles = createProfiles(mails);
+
+				logger.accept("Aggregate mails");
 				Collection<Actor> actors = createActors(profiles);
-				Function<Mail.Address, Actor> addressToActor = address -> {
-					return actors.stream().filter(actor -> actor.profile().contains(address)).findFirst().get();
-				};
-				Map<Actor, Actor.Activity> actorsActivity = measureActorsActivity(actors, mails, addressToActor);
-
-				ByteArrayOutputStream out = new ByteArrayOutputStream();
-				PrintStream scriptStream = new PrintStream(out, false, Charset.forName("UTF-8"));
-				scriptStream.println("@startuml");
-				scriptStream.println("hide unlinked");
-				writeActors(actors, actorsActivity, scriptStream);
-				writeSequence(mails, addressToActor, scriptStream);
-				scriptStream.println("@enduml");
-				scriptStream.flush();
-				String script = out.toString();
-
-				return script;
+				Function<Mail.Address, Actor> addressToActor = createAddressToActor(actors);
+				return aggregate(actors, addressToActor, mails);
 			}
 
-			private Map<Actor, Actor.Activity> measureActorsActivity(Collection<Actor> actors, List<Mail> mails,
-					Function<Mail.Address, Actor> addressToActor) {
-				Map<Actor, Long> actorSent = mails.stream()//
-						.map(Mail::sender)//
-						.map(addressToActor)//
-						.collect(groupingBy(actor -> actor, counting()));
-
-				Map<Actor, Long> actorReceived = mails.stream()//
-						.flatMap(mail -> {
-							Mail.Address senderAddress = mail.sender();
-							Actor senderActor = addressToActor.apply(senderAddress);
-							return mail.receivers()//
-									.map(addressToActor)//
+			private Aggregation aggregate(Collection<Actor> actors, Function<Mail.Address, Actor> addressToActor,
+					List<Mail> mails) {
+				Map<Actor, Long> actorSent = new HashMap<>();
+				Map<Actor, Long> actorReceived = new HashMap<>();
+				List<Edge> edges = new ArrayList<>();
+				mails.stream()//
+						.sorted(comparing(Mail::receivedDate))//
+						.forEach(mail -> {
+							Actor senderActor = addressToActor.apply(mail.sender());
+							actorSent.merge(senderActor, 1L, Long::sum);
+							mail.receivers().map(addressToActor)//
 									// Ignore communications within same actor
 									// Apply to both same and different addresses
-									.filter(actor -> !actor.equals(senderActor))//
+									.filter(receiverActor -> !receiverActor.equals(senderActor))//
 									// Several addresses might be in the same actor
 									// Count each actor once
-									.distinct();
-						})//
-						.collect(groupingBy(actor -> actor, counting()));
+									.distinct()//
+									.forEach(receiverActor -> {
+										actorReceived.merge(receiverActor, 1L, Long::sum);
+										edges.add(new Edge(senderActor, receiverActor, mail.receivedDate(), mail.subject()));
+									});
+						});
 
-				return actors.stream().collect(toMap(//
+				Map<Actor, Actor.Activity> activities = actors.stream().collect(toMap(//
 						actor -> actor, //
 						actor -> {
 							long sent = actorSent.getOrDefault(actor, 0L);
@@ -223,39 +498,145 @@ public interface MailHistory {
 							return new Actor.Activity(sent, received);
 						}//
 				));
+				List<Actor> sortedActors = actors.stream()//
+						// Inactive actors are hidden anyway, no need to write them
+						.filter(actor -> activities.get(actor).total() > 0)//
+						.sorted(comparing(actor -> activities.get(actor).total()).reversed())//
+						.toList();
+
+				return new Aggregation(sortedActors, unmodifiableMap(activities), unmodifiableList(edges));
 			}
 
-			private void writeActors(Collection<Actor> actors, Map<Actor, Actor.Activity> actorsActivity,
-					PrintStream scriptStream) {
-				actors.stream()//
-						.sorted(comparing(actor -> actorsActivity.get(actor).total()).reversed())//
-						.forEach(actor -> {
-							Actor.Activity activity = actorsActivity.get(actor);
-							long sent = activity.sent();
-							long received = activity.received();
-							String activityStr = "[" + sent + " → " + received + "]";
-
-							Stream<String> nameStream = actor.profile().names().stream()//
-									.findFirst().map(Stream::of).orElse(Stream.empty());
-							Stream<String> emailsStream = actor.profile().emails().stream()//
-									.map(String::toLowerCase).distinct().sorted();
-							String addressesStr = Stream.concat(nameStream, emailsStream).collect(joining(newline));
-
-							String description = activityStr + newline + addressesStr;
-
-							scriptStream.println("actor \"" + description + "\" as " + actor.id());
-						});
+			/**
+			 * Write the script line by line in the file, so it is never fully in memory
+			 * while writing it. The {@link Aggregation} it comes from still holds all
+			 * its {@link Edge}s.
+			 */
+			private void writeScriptFile(Path path, Consumer<PrintWriter> scriptWriting) {
+				try (PrintWriter scriptWriter = new PrintWriter(Files.newBufferedWriter(path, UTF_8))) {
+					scriptWriting.accept(scriptWriter);
+					// PrintWriter does not throw, so check it explicitly
+					if (scriptWriter.checkError()) {
+						throw new RuntimeException("Cannot write script: " + path);
+					}
+				} catch (IOException cause) {
+					throw new RuntimeException("Cannot write script: " + path, cause);
+				}
 			}
 
+			private void writePlantUml(Aggregation aggregation, PrintWriter scriptWriter) {
+				scriptWriter.println("@startuml");
+				scriptWriter.println("hide unlinked");
+				writeActors(aggregation, scriptWriter);
+				writeSequence(aggregation, scriptWriter);
+				scriptWriter.println("@enduml");
+			}
+
+			/**
+			 * Let PlantUML read the script from its file, rather than from a
+			 * {@link String} built aside. PlantUML still loads the whole script and
+			 * diagram in memory to render it, so the memory needed grows with the
+			 * script.
+			 */
+			private void renderSvg(Path scriptPath, Path svgPath) {
+				File scriptFile = scriptPath.toFile();
+				File outputDirectory = scriptPath.toAbsolutePath().getParent().toFile();
+				try {
+					SourceFileReader reader = new SourceFileReader(Defines.createWithFileName(scriptFile), scriptFile,
+							outputDirectory, List.of(), UTF_8.name(), new FileFormatOption(FileFormat.SVG));
+					List<GeneratedImage> images = reader.getGeneratedImages();
+					if (images.size() != 1) {
+						throw new RuntimeException("Cannot generate single SVG from " + scriptPath + ": " + images);
+					}
+					GeneratedImage image = images.get(0);
+					Files.move(image.getPngFile().toPath(), svgPath, REPLACE_EXISTING);
+					logger.accept(image.getDescription());
+				} catch (IOException cause) {
+					throw new RuntimeException("Cannot write SVG: " + svgPath, cause);
+				}
+			}
+
+			/**
+			 * Index the actors by email, so each address is resolved with a single
+			 * lookup. Like {@link Profile#contains(Mail.Address)}, emails are compared
+			 * without case, and the first actor having an email owns it.
+			 */
+			private Function<Mail.Address, Actor> createAddressToActor(Collection<Actor> actors) {
+				Map<String, Actor> emailActors = new HashMap<>();
+				actors.forEach(actor -> {
+					actor.profile().emails().forEach(email -> emailActors.putIfAbsent(email.toLowerCase(), actor));
+				});
+				// The same addresses come again and again, so resolve each once
+				Map<Mail.Address, Actor> addressActors = new HashMap<>();
+				return address -> addressActors.computeIfAbsent(address, key -> {
+					Actor actor = emailActors.get(key.email().toLowerCase());
+					if (actor == null) {
+						throw new NoSuchElementException("No actor for " + key);
+					}
+					return actor;
+				});
+			}
+
+			private void writeActors(Aggregation aggregation, PrintWriter scriptWriter) {
+				aggregation.actors().forEach(actor -> {
+					Actor.Activity activity = aggregation.activities().get(actor);
+					long sent = activity.sent();
+					long received = activity.received();
+					String activityStr = "[" + sent + " → " + received + "]";
+
+					Stream<String> nameStream = actor.profile().names().stream()//
+							.findFirst().map(Stream::of).orElse(Stream.empty());
+					Stream<String> emailsStream = actor.profile().emails().stream()//
+							.map(String::toLowerCase).distinct().sorted();
+					String addressesStr = Stream.concat(nameStream, emailsStream).collect(joining(newline));
+
+					String description = activityStr + newline + addressesStr;
+
+					scriptWriter.println("actor \"" + description + "\" as " + actor.id());
+				});
+			}
+
+			/**
+			 * Delete the directory and all its content, without throwing, so it can be
+			 * used while another exception is being thrown.
+			 * 
+			 * @return the failure of the deletion, if any
+			 */
+			private static Optional<IOException> deleteRecursively(Path directory) {
+				try (Stream<Path> paths = Files.walk(directory)) {
+					// Delete the content before the directories containing it
+					for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+						Files.deleteIfExists(path);
+					}
+					return Optional.empty();
+				} catch (IOException cause) {
+					return Optional.of(cause);
+				}
+			}
+
+			/**
+			 * Each actor ID is derived from the smallest email of its profile, so it
+			 * does not change when other profiles are added or merged. Otherwise, the
+			 * scripts of unchanged windows would change too.
+			 */
 			private Collection<Actor> createActors(Collection<Profile> profiles) {
-				int[] count = { 0 };
+				Set<String> ids = new HashSet<>();
 				return profiles.stream()//
-						.map(profile -> new Actor(profile, "Actor" + count[0]++))//
+						.map(profile -> {
+							String email = profile.emails().stream().map(String::toLowerCase).sorted().findFirst()
+									.orElseThrow(() -> new IllegalArgumentException("No email in " + profile));
+							String hash = Fingerprint.of(email.getBytes(UTF_8)).toString().substring(0, 16);
+							String id = "Actor" + hash;
+							// Keep IDs unique in the unlikely case of a collision
+							for (int index = 2; !ids.add(id); index++) {
+								id = "Actor" + hash + "_" + index;
+							}
+							return new Actor(profile, id);
+						})//
 						.toList();
 			}
 
-			private void writeSequence(List<Mail> mails, Function<Mail.Address, Actor> addressToActor,
-					PrintStream scriptStream) {
+			private void writeSequence(Aggregation aggregation, PrintWriter scriptWriter) {
 				DateTimeFormatter timeFormatter = new DateTimeFormatterBuilder()//
 						.append(ISO_LOCAL_DATE).appendLiteral(" ").append(ISO_LOCAL_TIME)//
 						.toFormatter(Locale.getDefault());
@@ -264,29 +645,14 @@ public interface MailHistory {
 				UnaryOperator<String> subjectAdapter = subject -> {
 					return subject.substring(0, Math.min(subjectLengthLimit, subject.length()));
 				};
-				mails.stream()//
-						.sorted(comparing(Mail::receivedDate))//
-						.forEach(mail -> {
-							Mail.Address senderAddress = mail.sender();
-							Actor senderActor = addressToActor.apply(senderAddress);
-							String senderId = senderActor.id();
-							ZonedDateTime date = mail.receivedDate();
-							String dateStr = timeFormatter.format(date);
-							mail.receivers().map(addressToActor)//
-									// Ignore communications within same actor
-									// Apply to both same and different addresses
-									.filter(receiverActor -> !receiverActor.equals(senderActor))//
-									// Several addresses might be in the same actor
-									// Count each actor once
-									.distinct()//
-
-									.forEach(receiverActor -> {
-										String receiverId = receiverActor.id();
-										String subject = subjectAdapter.apply(mail.subject());
-										String description = dateStr + newline + subject;
-										scriptStream.println(senderId + " --> " + receiverId + " : " + description);
-									});
-						});
+				aggregation.edges().forEach(edge -> {
+					String senderId = edge.sender().id();
+					String receiverId = edge.receiver().id();
+					String dateStr = timeFormatter.format(edge.date());
+					String subject = subjectAdapter.apply(edge.subject());
+					String description = dateStr + newline + subject;
+					scriptWriter.println(senderId + " --> " + receiverId + " : " + description);
+				});
 			}
 
 			private Stream<UnaryOperator<Collection<Profile>>> createGroupsReducers(
@@ -307,18 +673,40 @@ public interface MailHistory {
 				);
 			}
 
+			/**
+			 * Merge the profiles sharing an email, compared without case. The merge is
+			 * transitive: profiles are merged if they are linked through a chain of
+			 * shared emails. Each merged profile has the names and emails of all its
+			 * members, and comes at the position of its first member.
+			 */
 			private UnaryOperator<Collection<Profile>> createProfilesReducerByCommonEmail() {
-				return createSinglePassReducer(//
-						(profile) -> new Profile.Base(new HashSet<>(profile.names()), new HashSet<>(profile.emails())), //
-						(pivot, profile) -> profile.emails().stream().map(String::toLowerCase)//
-								.anyMatch(pivot.emails().stream().map(String::toLowerCase).collect(toList())::contains), //
-						(pivot, profile) -> {
-							pivot.names().addAll(profile.names());
-							pivot.emails().addAll(profile.emails());
-						}, //
-						(pivot) -> Optional
-								.of(new Profile.Base(unmodifiableSet(pivot.names()), unmodifiableSet(pivot.emails())))//
-				);
+				return profiles -> {
+					List<Profile> items = new ArrayList<>(profiles);
+					DisjointSets sets = new DisjointSets(items.size());
+					Map<String, Integer> emailOwners = new HashMap<>();
+					for (int i = 0; i < items.size(); i++) {
+						for (String email : items.get(i).emails()) {
+							Integer owner = emailOwners.putIfAbsent(email.toLowerCase(), i);
+							if (owner != null) {
+								sets.union(owner, i);
+							}
+						}
+					}
+
+					Map<Integer, Profile> mergedProfiles = new LinkedHashMap<>();
+					for (int i = 0; i < items.size(); i++) {
+						Profile profile = items.get(i);
+						Profile merged = mergedProfiles.computeIfAbsent(sets.find(i),
+								root -> new Profile.Base(new LinkedHashSet<>(), new LinkedHashSet<>()));
+						merged.names().addAll(profile.names());
+						merged.emails().addAll(profile.emails());
+					}
+
+					return mergedProfiles.values().stream()//
+							.<Profile>map(merged -> new Profile.Base(unmodifiableSet(merged.names()),
+									unmodifiableSet(merged.emails())))//
+							.collect(toList());
+				};
 			}
 
 			private UnaryOperator<Collection<Profile>> createProfileNamesCleaner() {
@@ -357,37 +745,6 @@ public interface MailHistory {
 				);
 			}
 
-			private <T> UnaryOperator<Collection<T>> createSinglePassReducer(UnaryOperator<T> pivotInitializer,
-					BiPredicate<T, T> mergePredicate, BiConsumer<T, T> merger,
-					Function<T, Optional<T>> pivotFinalizer) {
-				return new UnaryOperator<Collection<T>>() {
-
-					@Override
-					public Collection<T> apply(Collection<T> items) {
-						Collection<T> result = new LinkedList<>();
-						Collection<T> processingItems = items;
-						while (!processingItems.isEmpty()) {
-							Collection<T> remainingItems = new LinkedList<>();
-							var wrapper = new Object() {
-								T pivot = null;
-							};
-							processingItems.forEach(item -> {
-								if (wrapper.pivot == null) {
-									wrapper.pivot = pivotInitializer.apply(item);
-								} else if (mergePredicate.test(wrapper.pivot, item)) {
-									merger.accept(wrapper.pivot, item);
-								} else {
-									remainingItems.add(item);
-								}
-							});
-							pivotFinalizer.apply(wrapper.pivot).ifPresent(result::add);
-							processingItems = remainingItems;
-						}
-						return result;
-					}
-				};
-			}
-
 			private <T> UnaryOperator<Collection<T>> createSinglePassReducer(Supplier<T> pivotInitializer,
 					Predicate<T> mergePredicate, BiConsumer<T, T> merger, Function<T, Optional<T>> pivotFinalizer) {
 				return new UnaryOperator<Collection<T>>() {
@@ -0,0 +1,211 @@
+package fr.vergne.condominium.core.mail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import fr.vergne.condominium.core.parser.mbox.MBoxParser.Symbol;
+
+/**
+ * {@link Headers} storing all the raw values in a single array, with the offsets
+ * of each value. Names are compared without case, and well-known names share
+ * the same instance for all the mails. Values are decoded only when their
+ * {@link Header} is requested, and each {@link Header} is built once.
+ */
+public class CompactHeaders implements Headers {
+
+	private static final Map<String, String> KNOWN_NAMES = Stream.of(//
+			"from", "to", "cc", "bcc", "subject", "date", "delivered-to", "reply-to", "sender", "message-id",
+			"in-reply-to", "references", "received", "return-path", "mime-version", "content-type",
+			"content-transfer-encoding", "content-disposition", "content-id", "content-description",
+			"x-mailer", "user-agent", "dkim-signature", "authentication-results", "list-unsubscribe")//
+			.collect(Collectors.toUnmodifiableMap(name -> name, name -> name));
+
+	private final char[] content;
+	private final String[] names;
+	private final String[] originalNames;
+	private final int[] valueStarts;
+	private final int[] valueEnds;
+	private final UnaryOperator<String> valueDecoder;
+	private final BiFunction<String, String, Stream<Symbol>> symbolsParser;
+	private final Map<String, Header> cache = new ConcurrentHashMap<>();
+
+	private CompactHeaders(Builder builder) {
+		this.content = builder.content.toString().toCharArray();
+		this.names = Arrays.copyOf(builder.names, builder.size);
+		this.originalNames = Arrays.copyOf(builder.originalNames, builder.size);
+		this.valueStarts = Arrays.copyOf(builder.valueStarts, builder.size);
+		this.valueEnds = Arrays.copyOf(builder.valueEnds, builder.size);
+		this.valueDecoder = builder.valueDecoder;
+		this.symbolsParser = builder.symbolsParser;
+	}
+
+	/**
+	 * @param valueDecoder  the decoding to apply on each value, once trimmed
+	 * @param symbolsParser the parser providing the structure of a header body
+	 * @return a {@link Builder} to add headers to
+	 */
+	public static Builder builder(UnaryOperator<String> valueDecoder,
+			BiFunction<String, String, Stream<Symbol>> symbolsParser) {
+		return new Builder(valueDecoder, symbolsParser);
+	}
+
+	@Override
+	public Optional<Header> tryGet(String name) {
+		String lowerName = name.toLowerCase(Locale.ROOT);
+		Header header = cache.get(lowerName);
+		if (header == null) {
+			int first = indexOf(lowerName);
+			if (first == -1) {
+				return Optional.empty();
+			}
+			header = cache.computeIfAbsent(lowerName, key -> new CompactHeader(first));
+		}
+		return Optional.of(header);
+	}
+
+	@Override
+	public Stream<Header> stream() {
+		List<Header> headers = new ArrayList<>();
+		for (int i = 0; i < names.length; i++) {
+			if (indexOf(names[i]) == i) {
+				headers.add(tryGet(names[i]).get());
+			}
+		}
+		return headers.stream();
+	}
+
+	private int indexOf(String lowerName) {
+		for (int i = 0; i < names.length; i++) {
+			if (names[i].equals(lowerName)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private class CompactHeader extends Header.WithString {
+		private final int first;
+		private volatile List<String> bodies;
+
+		CompactHeader(int first) {
+			this.first = first;
+		}
+
+		@Override
+		public String name() {
+			return originalNames[first];
+		}
+
+		@Override
+		public List<String> bodies() {
+			List<String> decodedBodies = bodies;
+			if (decodedBodies == null) {
+				List<String> values = new ArrayList<>(1);
+				String name = names[first];
+				for (int i = first; i < names.length; i++) {
+					if (names[i].equals(name)) {
+						values.add(valueDecoder.apply(trimmedValue(i)));
+					}
+				}
+				decodedBodies = Collections.unmodifiableList(values);
+				bodies = decodedBodies;
+			}
+			return decodedBodies;
+		}
+
+		@Override
+		public Stream<Symbol> structure() {
+			return symbolsParser.apply(name(), body());
+		}
+	}
+
+	private String trimmedValue(int index) {
+		int start = valueStarts[index];
+		int end = valueEnds[index];
+		while (start < end && content[start] <= ' ') {
+			start++;
+		}
+		while (end > start && content[end - 1] <= ' ') {
+			end--;
+		}
+		return new String(content, start, end - start);
+	}
+
+	/**
+	 * A {@link Builder} accumulates the headers of a mail in order.
+	 */
+	public static class Builder {
+		private final UnaryOperator<String> valueDecoder;
+		private final BiFunction<String, String, Stream<Symbol>> symbolsParser;
+		private final StringBuilder content = new StringBuilder();
+		private String[] names = new String[32];
+		private String[] originalNames = new String[32];
+		private int[] valueStarts = new int[32];
+		private int[] valueEnds = new int[32];
+		private int size = 0;
+
+		private Builder(UnaryOperator<String> valueDecoder,
+				BiFunction<String, String, Stream<Symbol>> symbolsParser) {
+			this.valueDecoder = valueDecoder;
+			this.symbolsParser = symbolsParser;
+		}
+
+		/**
+		 * Add a header from a line of the form <code>name:value</code>.
+		 *
+		 * @param line       the line containing the header
+		 * @param colonIndex the position of the colon separating the name from the
+		 *                   value
+		 * @return this {@link Builder}
+		 */
+		public Builder add(String line, int colonIndex) {
+			if (size == names.length) {
+				int capacity = 2 * size;
+				names = Arrays.copyOf(names, capacity);
+				originalNames = Arrays.copyOf(originalNames, capacity);
+				valueStarts = Arrays.copyOf(valueStarts, capacity);
+				valueEnds = Arrays.copyOf(valueEnds, capacity);
+			}
+			String originalName = line.substring(0, colonIndex);
+			String name = originalName.toLowerCase(Locale.ROOT);
+			names[size] = KNOWN_NAMES.getOrDefault(name, name);
+			originalNames[size] = originalName;
+			valueStarts[size] = content.length();
+			content.append(line, colonIndex + 1, line.length());
+			valueEnds[size] = content.length();
+			size++;
+			return this;
+		}
+
+		/**
+		 * Extend the value of the last header with a folded line.
+		 *
+		 * @param line  the folded line
+		 * @param start the position in the line where the continuation starts
+		 * @return this {@link Builder}
+		 */
+		public Builder unfold(String line, int start) {
+			if (size == 0) {
+				throw new IllegalStateException("No header to unfold: " + line);
+			}
+			// The last value is at the end of the content, so it is extended in place
+			content.append(line, start, line.length());
+			valueEnds[size - 1] = content.length();
+			return this;
+		}
+
+		public CompactHeaders build() {
+			return new CompactHeaders(this);
+		}
+	}
+}
@@ -1,5 +1,9 @@
 package fr.vergne.condominium.core.mail;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.time.ZonedDateTime;
 import java.util.Collection;
 import java.util.Collections;
@@ -76,6 +80,29 @@ public interface Mail {
 
 		public static interface Binary extends Body {
 			byte[] bytes();
+
+			/**
+			 * @return the number of bytes, which may be known without decoding them
+			 */
+			default long size() {
+				return bytes().length;
+			}
+
+			/**
+			 * @return an {@link InputStream} providing the bytes as they are decoded,
+			 *         so they don't need to be all in memory at once
+			 */
+			default InputStream inputStream() {
+				return new ByteArrayInputStream(bytes());
+			}
+
+			/**
+			 * @return a {@link ReadableByteChannel} providing the bytes as they are
+			 *         decoded
+			 */
+			default ReadableByteChannel channel() {
+				return Channels.newChannel(inputStream());
+			}
 		}
 
 		public static interface Named extends Body {
@@ -92,7 +119,7 @@ public interface Mail {
 
 	static class Base implements Mail {
 		private final String id;
-		private final List<String> lines;
+		private final Supplier<List<String>> linesSupplier;
 		private final Supplier<Headers> headersSupplier;
 		private final Supplier<Body> bodySupplier;
 		private final Supplier<ZonedDateTime> receivedDateSupplier;
@@ -102,18 +129,34 @@ public interface Mail {
 		public Base(String id, List<String> lines, Supplier<Headers> headersSupplier, Supplier<Body> bodySupplier,
 				Supplier<ZonedDateTime> receivedDateSupplier, Supplier<Address> senderSupplier,
 				Supplier<Stream<Address>> receiversSupplier) {
+			this(id, immutableLinesSupplier(lines), headersSupplier, bodySupplier, receivedDateSupplier,
+					senderSupplier, receiversSupplier);
+		}
+
+		/**
+		 * Create a {@link Mail} which lines are provided on demand, so their decoding
+		 * can be delayed until they are actually needed.
+		 */
+		public Base(String id, Supplier<List<String>> linesSupplier, Supplier<Headers> headersSupplier,
+				Supplier<Body> bodySupplier, Supplier<ZonedDateTime> receivedDateSupplier,
+				Supplier<Address> senderSupplier, Supplier<Stream<Address>> receiversSupplier) {
 			this.id = id;
 			this.receivedDateSupplier = receivedDateSupplier;
 			this.headersSupplier = headersSupplier;
 			this.bodySupplier = bodySupplier;
 			this.senderSupplier = senderSupplier;
 			this.receiversSupplier = receiversSupplier;
-			this.lines = Collections.unmodifiableList(lines);
+			this.linesSupplier = linesSupplier;
+		}
+
+		private static Supplier<List<String>> immutableLinesSupplier(List<String> lines) {
+			List<String> immutableLines = Collections.unmodifiableList(lines);
+			return () -> immutableLines;
 		}
 
 		@Override
 		public List<String> lines() {
-			return lines;
+			return linesSupplier.get();
 		}
 
 		@Override
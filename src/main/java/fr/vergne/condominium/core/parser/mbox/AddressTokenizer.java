@@ -0,0 +1,153 @@
+package fr.vergne.condominium.core.parser.mbox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import fr.vergne.condominium.core.parser.mbox.MBoxParser.Address;
+
+/**
+ * Parse address lists, as found in <code>To</code> or <code>Cc</code> headers,
+ * in a single pass over the header body. Addresses are separated by commas,
+ * unless they occur in a quoted string, a comment or an angle address, as
+ * described in
+ * <a href="https://datatracker.ietf.org/doc/html/rfc5322#section-3.4">RFC
+ * 5322</a>. Each address can have one of these forms:
+ * <ul>
+ * <li><code>"name" &lt;email&gt;</code>, the quotes being optional</li>
+ * <li><code>email (name)</code></li>
+ * <li><code>&lt;email&gt;</code></li>
+ * <li><code>email</code></li>
+ * </ul>
+ * Only the name and the email of each address are extracted from the body, no
+ * other intermediary {@link String} is built.
+ */
+class AddressTokenizer {
+
+	/**
+	 * @param addresses the comma-separated addresses
+	 * @return the non-blank {@link Address}es, in order
+	 */
+	public static List<Address> parseList(String addresses) {
+		List<Address> result = new ArrayList<>();
+		boolean isQuoted = false;
+		int commentDepth = 0;
+		boolean isAngle = false;
+		int start = 0;
+		int length = addresses.length();
+		for (int i = 0; i < length; i++) {
+			char c = addresses.charAt(i);
+			if (isQuoted) {
+				if (c == '\\') {
+					i++;// Quoted pair
+				} else if (c == '"') {
+					isQuoted = false;
+				}
+			} else if (commentDepth > 0) {
+				if (c == '\\') {
+					i++;// Quoted pair
+				} else if (c == '(') {
+					commentDepth++;
+				} else if (c == ')') {
+					commentDepth--;
+				}
+			} else if (isAngle) {
+				if (c == '>') {
+					isAngle = false;
+				}
+			} else if (c == '"') {
+				isQuoted = true;
+			} else if (c == '(') {
+				commentDepth++;
+			} else if (c == '<') {
+				isAngle = true;
+			} else if (c == ',') {
+				addIfNotBlank(result, addresses, start, i);
+				start = i + 1;
+			}
+		}
+		addIfNotBlank(result, addresses, start, length);
+		return result;
+	}
+
+	private static void addIfNotBlank(List<Address> result, String addresses, int start, int end) {
+		start = skipWhiteSpacesForward(addresses, start, end);
+		if (start < end) {
+			result.add(parse(addresses, start, end));
+		}
+	}
+
+	/**
+	 * @param address the {@link String} containing the address
+	 * @param start   the start of the address, inclusive
+	 * @param end     the end of the address, exclusive
+	 * @return the parsed {@link Address}
+	 */
+	public static Address parse(String address, int start, int end) {
+		int first = skipWhiteSpacesForward(address, start, end);
+		int last = skipWhiteSpacesBackward(address, first, end) - 1;
+		if (first > last) {
+			return new Address("");
+		}
+
+		char lastChar = address.charAt(last);
+		if (lastChar == '>') {
+			// "name" <email> or <email>
+			int emailStart = address.lastIndexOf('<', last - 1) + 1;
+			if (emailStart > first && emailStart < last && address.indexOf('>', emailStart) == last) {
+				String email = address.substring(emailStart, last);
+				return new Address(email, extractName(address, first, emailStart - 1));
+			}
+		} else if (lastChar == ')') {
+			// email (name)
+			int previousClose = address.lastIndexOf(')', last - 1);
+			int nameStart = address.indexOf('(', Math.max(first, previousClose + 1)) + 1;
+			if (nameStart > first && nameStart < last) {
+				String name = address.substring(nameStart, last);
+				Optional<String> email = extractName(address, first, nameStart - 1);
+				if (email.isPresent()) {
+					return new Address(email.get(), Optional.of(name).filter(n -> !n.isBlank()));
+				}
+			}
+		}
+		return new Address(address.substring(start, end).trim());
+	}
+
+	/**
+	 * Extract a possibly quoted name, ignoring the surrounding white spaces.
+	 *
+	 * @return the name, or nothing if it is blank
+	 */
+	private static Optional<String> extractName(String address, int start, int end) {
+		int nameStart = skipWhiteSpacesForward(address, start, end);
+		if (nameStart < end && address.charAt(nameStart) == '"') {
+			nameStart++;
+		}
+		int nameEnd = skipWhiteSpacesBackward(address, nameStart, end);
+		if (nameEnd > nameStart && address.charAt(nameEnd - 1) == '"') {
+			nameEnd--;
+		}
+		if (isBlank(address, nameStart, nameEnd)) {
+			return Optional.empty();
+		}
+		return Optional.of(address.substring(nameStart, nameEnd));
+	}
+
+	private static int skipWhiteSpacesForward(String value, int start, int end) {
+		while (start < end && Character.isWhitespace(value.charAt(start))) {
+			start++;
+		}
+		return start;
+	}
+
+	private static int skipWhiteSpacesBackward(String value, int start, int end) {
+		while (end > start && Character.isWhitespace(value.charAt(end - 1))) {
+			end--;
+		}
+		return end;
+	}
+
+	private static boolean isBlank(String value, int start, int end) {
+		return skipWhiteSpacesForward(value, start, end) == end;
+	}
+}
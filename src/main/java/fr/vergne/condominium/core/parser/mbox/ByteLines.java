@@ -0,0 +1,92 @@
+package fr.vergne.condominium.core.parser.mbox;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Decode lines from bytes only when they are requested. Lines are terminated
+ * like in {@link java.io.BufferedReader#readLine()}: by <code>\n</code>,
+ * <code>\r</code> or <code>\r\n</code>.
+ */
+class ByteLines {
+
+	/**
+	 * An {@link java.util.Iterator} decoding each line when it is requested. The
+	 * bytes which remain after the lines already read can be retrieved at any
+	 * time.
+	 */
+	public static class Iterator implements java.util.Iterator<String> {
+		private final ByteBuffer buffer;
+		private final Charset charset;
+		private byte[] lineBytes = new byte[256];
+
+		private Iterator(ByteBuffer buffer, Charset charset) {
+			this.buffer = buffer;
+			this.charset = charset;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return buffer.hasRemaining();
+		}
+
+		@Override
+		public String next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			int lineStart = buffer.position();
+			int limit = buffer.limit();
+			int lineEnd = lineStart;
+			byte b = 0;
+			while (lineEnd < limit && (b = buffer.get(lineEnd)) != '\n' && b != '\r') {
+				lineEnd++;
+			}
+			int nextLineStart = lineEnd;
+			if (lineEnd < limit) {
+				nextLineStart++;
+				if (b == '\r' && nextLineStart < limit && buffer.get(nextLineStart) == '\n') {
+					nextLineStart++;
+				}
+			}
+			buffer.position(nextLineStart);
+
+			int length = lineEnd - lineStart;
+			if (lineBytes.length < length) {
+				lineBytes = new byte[Math.max(length, 2 * lineBytes.length)];
+			}
+			buffer.get(lineStart, lineBytes, 0, length);
+			return new String(lineBytes, 0, length, charset);
+		}
+
+		/**
+		 * @return the bytes not consumed yet, without copying them
+		 */
+		public ByteBuffer remaining() {
+			return buffer.slice();
+		}
+	}
+
+	/**
+	 * @param bytes   the bytes to read lines from, from its position to its limit
+	 * @param charset the {@link Charset} to decode the lines with
+	 * @return an {@link Iterator} decoding each line when it is requested
+	 */
+	public static Iterator iterator(ByteBuffer bytes, Charset charset) {
+		return new Iterator(bytes.duplicate(), charset);
+	}
+
+	/**
+	 * @param bytes   the bytes to read lines from, from its position to its limit
+	 * @param charset the {@link Charset} to decode the lines with
+	 * @return all the decoded lines
+	 */
+	public static List<String> decode(ByteBuffer bytes, Charset charset) {
+		List<String> lines = new ArrayList<>();
+		iterator(bytes, charset).forEachRemaining(lines::add);
+		return lines;
+	}
+}
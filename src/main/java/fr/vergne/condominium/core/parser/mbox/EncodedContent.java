@@ -0,0 +1,95 @@
+package fr.vergne.condominium.core.parser.mbox;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import fr.vergne.condominium.core.parser.mbox.MBoxParser.Encoding;
+
+/**
+ * An {@link EncodedContent} refers to the encoded bytes of a body, without
+ * copying them, and decodes them only when requested. Once decoded, the bytes
+ * are retained to not decode them again. Similarly, their size is computed
+ * once.
+ */
+class EncodedContent {
+	private final ByteBuffer encoded;
+	private final Encoding encoding;
+	private volatile byte[] decoded;
+	private volatile long decodedSize;
+
+	EncodedContent(ByteBuffer encoded, Encoding encoding) {
+		this.encoded = encoded;
+		this.encoding = encoding;
+		this.decoded = null;
+		this.decodedSize = -1;
+	}
+
+	static EncodedContent ofDecoded(byte[] bytes) {
+		EncodedContent content = new EncodedContent(ByteBuffer.wrap(bytes), Encoding.BINARY);
+		content.decoded = bytes;
+		return content;
+	}
+
+	/**
+	 * @return the number of decoded bytes, computed without decoding them when
+	 *         the encoding allows it, at the first call only
+	 */
+	public long decodedSize() {
+		long size = decodedSize;
+		if (size < 0) {
+			size = computeDecodedSize();
+			decodedSize = size;
+		}
+		return size;
+	}
+
+	private long computeDecodedSize() {
+		byte[] bytes = decoded;
+		if (bytes != null) {
+			return bytes.length;
+		}
+		switch (encoding) {
+		case BINARY, _7BIT, _8BIT:
+			return encoded.remaining();
+		case BASE64:
+			// Each base64 character encodes 6 bits, others are ignored
+			long base64CharsCount = 0;
+			for (int i = encoded.position(); i < encoded.limit(); i++) {
+				if (isBase64(encoded.get(i))) {
+					base64CharsCount++;
+				}
+			}
+			return base64CharsCount * 6 / 8;
+		default:
+			return decode().length;
+		}
+	}
+
+	private static boolean isBase64(byte b) {
+		return 'A' <= b && b <= 'Z' || 'a' <= b && b <= 'z' || '0' <= b && b <= '9' || b == '+' || b == '/';
+	}
+
+	/**
+	 * @return an {@link InputStream} decoding the bytes while they are read
+	 */
+	public InputStream inputStream() {
+		byte[] bytes = decoded;
+		if (bytes != null) {
+			return new ByteArrayInputStream(bytes);
+		}
+		return encoding.decoder().decode(encoded);
+	}
+
+	/**
+	 * @return the decoded bytes, decoded at the first call only
+	 */
+	public byte[] decode() {
+		byte[] bytes = decoded;
+		if (bytes == null) {
+			bytes = encoding.decoder().decodeToBytes(encoded);
+			decoded = bytes;
+		}
+		return bytes;
+	}
+}
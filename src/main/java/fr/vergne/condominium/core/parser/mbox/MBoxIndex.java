@@ -0,0 +1,225 @@
+package fr.vergne.condominium.core.parser.mbox;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * A {@link MBoxIndex} tells where each mail of an mbox file is, in bytes. It is
+ * built with a single scan of the file and allows to access any mail directly,
+ * which is what allows to split the parsing of the mails across threads.
+ * <p>
+ * Each mail is also associated to the hash of its content. Once the index is
+ * saved, it can be reloaded to {@link #extend(MappedMBox)} it to the mails
+ * appended to the mbox file since then, without scanning again the mails
+ * already indexed. Hashing has a cost, so an index which is neither saved nor
+ * extended can be built without hashes through
+ * {@link #scanWithoutHashes(MappedMBox)}.
+ */
+class MBoxIndex {
+	private static final int VERSION = 1;
+	private static final String HASH_ALGORITHM = "SHA-256";
+	private static final int HASH_LENGTH = 32;
+
+	private long[] offsets;
+	private int[] lengths;
+	// Null if the mails are not hashed
+	private byte[] hashes;
+	private int size;
+
+	private MBoxIndex(int capacity, boolean isHashed) {
+		this.offsets = new long[capacity];
+		this.lengths = new int[capacity];
+		this.hashes = isHashed ? new byte[capacity * HASH_LENGTH] : null;
+		this.size = 0;
+	}
+
+	public static MBoxIndex scan(MappedMBox mbox) {
+		MBoxIndex index = new MBoxIndex(1024, true);
+		index.scanFrom(mbox, 0);
+		return index;
+	}
+
+	/**
+	 * Same as {@link #scan(MappedMBox)}, but without hashing the mails. The index
+	 * can then be used to access the mails, but not be saved nor extended.
+	 */
+	public static MBoxIndex scanWithoutHashes(MappedMBox mbox) {
+		MBoxIndex index = new MBoxIndex(1024, false);
+		index.scanFrom(mbox, 0);
+		return index;
+	}
+
+	/**
+	 * Extend this index with the mails appended to the mbox file. The mails
+	 * already indexed are not searched nor parsed again, but they are all hashed
+	 * again to confirm that the file still starts with them, so even a mail
+	 * modified in place without changing its length is detected.
+	 *
+	 * @param mbox the mbox file which this index has been built from
+	 * @return a new index including the appended mails, or
+	 *         {@link Optional#empty()} if the indexed mails are not at the start
+	 *         of the file anymore
+	 */
+	public Optional<MBoxIndex> extend(MappedMBox mbox) {
+		checkHashed();
+		MBoxIndex extended = new MBoxIndex(Math.max(1024, size), true);
+		System.arraycopy(offsets, 0, extended.offsets, 0, size);
+		System.arraycopy(lengths, 0, extended.lengths, 0, size);
+		System.arraycopy(hashes, 0, extended.hashes, 0, size * HASH_LENGTH);
+		extended.size = size;
+		if (size == 0) {
+			extended.scanFrom(mbox, 0);
+			return Optional.of(extended);
+		}
+
+		int last = size - 1;
+		if (offset(last) + length(last) > mbox.size()) {
+			return Optional.empty();
+		}
+		// The same digest is reused for all the mails, since it resets after each
+		MessageDigest digest = createDigest();
+		for (int i = 0; i < size; i++) {
+			if (!isUnchanged(mbox, i, digest)) {
+				return Optional.empty();
+			}
+		}
+		MappedMBox.Bounds lastBounds = mbox.findMailEnd(offset(last));
+		if (lastBounds.mailEnd() - offset(last) != length(last)) {
+			return Optional.empty();
+		}
+		extended.scanFrom(mbox, lastBounds.nextMailStart());
+		return Optional.of(extended);
+	}
+
+	private boolean isUnchanged(MappedMBox mbox, int mailIndex, MessageDigest digest) {
+		byte[] actualHash = hash(digest, mbox.slice(offset(mailIndex), length(mailIndex)));
+		return Arrays.equals(hashes, mailIndex * HASH_LENGTH, (mailIndex + 1) * HASH_LENGTH, //
+				actualHash, 0, HASH_LENGTH);
+	}
+
+	private void scanFrom(MappedMBox mbox, long mailStart) {
+		// The same digest is reused for all the mails, since it resets after each
+		MessageDigest digest = hashes == null ? null : createDigest();
+		long fileSize = mbox.size();
+		while (mailStart < fileSize) {
+			MappedMBox.Bounds bounds = mbox.findMailEnd(mailStart);
+			int length = Math.toIntExact(bounds.mailEnd() - mailStart);
+			add(mailStart, length, digest == null ? null : hash(digest, mbox.slice(mailStart, length)));
+			mailStart = bounds.nextMailStart();
+		}
+	}
+
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance(HASH_ALGORITHM);
+		} catch (NoSuchAlgorithmException cause) {
+			throw new RuntimeException("Cannot hash mails", cause);
+		}
+	}
+
+	private static byte[] hash(MessageDigest digest, ByteBuffer bytes) {
+		digest.update(bytes);
+		return digest.digest();
+	}
+
+	private void add(long offset, int length, byte[] hash) {
+		if (size == offsets.length) {
+			offsets = Arrays.copyOf(offsets, 2 * size);
+			lengths = Arrays.copyOf(lengths, 2 * size);
+			if (hashes != null) {
+				hashes = Arrays.copyOf(hashes, 2 * size * HASH_LENGTH);
+			}
+		}
+		offsets[size] = offset;
+		lengths[size] = length;
+		if (hashes != null) {
+			System.arraycopy(hash, 0, hashes, size * HASH_LENGTH, HASH_LENGTH);
+		}
+		size++;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public long offset(int mailIndex) {
+		return offsets[checkIndex(mailIndex)];
+	}
+
+	public int length(int mailIndex) {
+		return lengths[checkIndex(mailIndex)];
+	}
+
+	public byte[] hash(int mailIndex) {
+		checkHashed();
+		int start = checkIndex(mailIndex) * HASH_LENGTH;
+		return Arrays.copyOfRange(hashes, start, start + HASH_LENGTH);
+	}
+
+	private void checkHashed() {
+		if (hashes == null) {
+			throw new IllegalStateException("Mails not hashed in this index");
+		}
+	}
+
+	private int checkIndex(int mailIndex) {
+		if (mailIndex < 0 || mailIndex >= size) {
+			throw new IndexOutOfBoundsException("No mail " + mailIndex + " among " + size);
+		}
+		return mailIndex;
+	}
+
+	public void save(Path path) {
+		checkHashed();
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+			out.writeInt(VERSION);
+			out.writeInt(size);
+			for (int i = 0; i < size; i++) {
+				out.writeLong(offsets[i]);
+				out.writeInt(lengths[i]);
+				out.write(hashes, i * HASH_LENGTH, HASH_LENGTH);
+			}
+		} catch (IOException cause) {
+			throw new RuntimeException("Cannot save mbox index to " + path, cause);
+		}
+	}
+
+	/**
+	 * @param path the file where the index has been saved
+	 * @return the loaded index, or {@link Optional#empty()} if there is no index
+	 *         to load
+	 */
+	public static Optional<MBoxIndex> load(Path path) {
+		if (!Files.exists(path)) {
+			return Optional.empty();
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new RuntimeException("Unsupported mbox index version " + version + " in " + path);
+			}
+			int size = in.readInt();
+			MBoxIndex index = new MBoxIndex(Math.max(1, size), true);
+			byte[] hash = new byte[HASH_LENGTH];
+			for (int i = 0; i < size; i++) {
+				long offset = in.readLong();
+				int length = in.readInt();
+				in.readFully(hash);
+				index.add(offset, length, hash);
+			}
+			return Optional.of(index);
+		} catch (IOException cause) {
+			throw new RuntimeException("Cannot load mbox index from " + path, cause);
+		}
+	}
+}
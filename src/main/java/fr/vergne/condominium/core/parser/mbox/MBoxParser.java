@@ -3,10 +3,17 @@ package fr.vergne.condominium.core.parser.mbox;
 import static java.lang.System.lineSeparator;
 import static java.util.stream.Collectors.joining;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Instant;
@@ -14,42 +21,44 @@ import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.Spliterator;
 import java.util.Spliterators;
-import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.IntFunction;
 import java.util.function.IntPredicate;
 import java.util.function.Supplier;
-import java.util.function.UnaryOperator;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
+import fr.vergne.condominium.core.mail.CompactHeaders;
 import fr.vergne.condominium.core.mail.Header;
 import fr.vergne.condominium.core.mail.Headers;
 import fr.vergne.condominium.core.mail.Mail;
 import fr.vergne.condominium.core.mail.Mail.Body;
 import fr.vergne.condominium.core.mail.MimeType;
-import fr.vergne.condominium.core.parser.mbox.MBoxParser.Encoding.Decoder.FromString;
-import fr.vergne.condominium.core.util.StringEscaper;
 
 public class MBoxParser {
 
-	private final Pattern headerPattern = Pattern.compile("^([^:]+):(.*)$");
+	private final Pattern fromPattern = Pattern.compile("^From ([^ ]+) (.*)$");
 	private final DateTimeFormatter timestampFormatter = DateTimeFormatter.ofPattern("E MMM dd HH:mm:ss Z yyyy",
 			Locale.ENGLISH);
 	private final Function<String, Address> addressParser = MBoxParser.Address.parser();
+	private final Function<String, Stream<Address>> addressesParser = MBoxParser.Address.listParser();
+	private final Function<String, Multipart.Splitter> multipartSplitters = Multipart.cachedSplitters(64);
+	private final Charset mboxCharset = Charset.defaultCharset();
 	private final Consumer<Object> logger;
 
 	public MBoxParser(Consumer<Object> logger) {
@@ -59,13 +68,143 @@ public class MBoxParser {
 	public Stream<Mail> parseMBox(Path mboxPath) {
 		Stream<String> lines;
 		try {
-			lines = Files.lines(mboxPath, Charset.defaultCharset());
+			lines = Files.lines(mboxPath, mboxCharset);
 		} catch (IOException cause) {
 			throw new RuntimeException("Cannot open " + mboxPath, cause);
 		}
 		return groupPerMail(lines).map(this::parseMail);
 	}
 
+	/**
+	 * Parse the mbox file through memory mapping. Contrary to
+	 * {@link #parseMBox(Path)}, the file is split into mails at the byte level,
+	 * and each mail decodes its lines only when they are requested.
+	 * <p>
+	 * The file is first scanned to index the position of each mail, so the
+	 * returned {@link Stream} knows its size and can be split efficiently. Call
+	 * {@link Stream#parallel()} on it to parse the mails on several threads.
+	 * 
+	 * @param mboxPath the mbox file to parse
+	 * @return the {@link Mail}s of the mbox file, in file order
+	 */
+	public Stream<Mail> parseMappedMBox(Path mboxPath) {
+		MBoxIndex index;
+		IntFunction<ByteBuffer> mailBytes;
+		// Mappings remain valid once the file is closed
+		try (MappedMBox mbox = MappedMBox.open(mboxPath)) {
+			// The index is not saved, so no need to hash the mails
+			index = MBoxIndex.scanWithoutHashes(mbox);
+			mailBytes = mbox.mapMails(index, 0);
+		}
+		return StreamSupport.stream(new MailSpliterator(mailBytes, 0, index.size()), false);
+	}
+
+	/**
+	 * An {@link Increment} provides the {@link Mail}s appended to an mbox file
+	 * since the last {@link Increment} has been committed.
+	 */
+	public interface Increment {
+		/**
+		 * @return the new {@link Mail}s, in file order
+		 */
+		Stream<Mail> mails();
+
+		/**
+		 * Confirm that the {@link #mails()} have been processed, so the next
+		 * {@link Increment} starts after them.
+		 */
+		void commit();
+	}
+
+	/**
+	 * Parse only the mails appended to the mbox file since the last committed
+	 * {@link Increment}. The position of the mails already parsed is stored in a
+	 * sidecar index file, with the hash of their content. If the mbox file does
+	 * not start with these mails anymore, all the mails are parsed again.
+	 * <p>
+	 * The mbox file is assumed to be append-only: a mail modified in place is
+	 * detected by its hash, which costs a hash of the mails already parsed, but
+	 * not their parsing. Any such modification leads to parse all the mails
+	 * again.
+	 * 
+	 * @param mboxPath  the mbox file to parse
+	 * @param indexPath the index file of the mbox, created if it does not exist
+	 * @return the {@link Increment} of the mbox file since the last commit
+	 */
+	public Increment parseMappedMBoxIncrement(Path mboxPath, Path indexPath) {
+		MBoxIndex index;
+		int firstNewMail;
+		IntFunction<ByteBuffer> mailBytes;
+		// Mappings remain valid once the file is closed
+		try (MappedMBox mbox = MappedMBox.open(mboxPath)) {
+			Optional<MBoxIndex> previousIndex = MBoxIndex.load(indexPath);
+			Optional<MBoxIndex> extendedIndex = previousIndex.flatMap(previous -> previous.extend(mbox));
+			if (extendedIndex.isPresent()) {
+				index = extendedIndex.get();
+				firstNewMail = previousIndex.get().size();
+			} else {
+				previousIndex.ifPresent(previous -> logger.accept("Mbox changed, reparse all mails"));
+				index = MBoxIndex.scan(mbox);
+				firstNewMail = 0;
+			}
+			mailBytes = mbox.mapMails(index, firstNewMail);
+		}
+		return new Increment() {
+
+			@Override
+			public Stream<Mail> mails() {
+				return StreamSupport.stream(new MailSpliterator(mailBytes, firstNewMail, index.size()), false);
+			}
+
+			@Override
+			public void commit() {
+				index.save(indexPath);
+			}
+		};
+	}
+
+	private class MailSpliterator implements Spliterator<Mail> {
+		private final IntFunction<ByteBuffer> mailBytes;
+		private int origin;
+		private final int fence;
+
+		MailSpliterator(IntFunction<ByteBuffer> mailBytes, int origin, int fence) {
+			this.mailBytes = mailBytes;
+			this.origin = origin;
+			this.fence = fence;
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super Mail> action) {
+			if (origin < fence) {
+				action.accept(parseMail(mailBytes.apply(origin++)));
+				return true;
+			}
+			return false;
+		}
+
+		@Override
+		public Spliterator<Mail> trySplit() {
+			int middle = (origin + fence) >>> 1;
+			if (middle <= origin) {
+				return null;
+			}
+			Spliterator<Mail> prefix = new MailSpliterator(mailBytes, origin, middle);
+			origin = middle;
+			return prefix;
+		}
+
+		@Override
+		public long estimateSize() {
+			return fence - origin;
+		}
+
+		@Override
+		public int characteristics() {
+			return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+		}
+	}
+
 	private Stream<List<String>> groupPerMail(Stream<String> lines) {
 		Iterator<List<String>> mailsIterator = new Iterator<List<String>>() {
 			Iterator<String> linesIterator = lines.iterator();
@@ -125,10 +264,118 @@ public class MBoxParser {
 		// rfc4155 MIME application/mbox
 		// rfc6854 Group syntax in From/Sender headers
 
-		Iterator<String> linesIterator = lines.iterator();
+		StringBuilder content = new StringBuilder();
+		for (String line : lines) {
+			content.append(line).append('\n');
+		}
+		ByteBuffer bytes = mboxCharset.encode(CharBuffer.wrap(content));
+		List<String> immutableLines = Collections.unmodifiableList(lines);
+		return parseMail(bytes, () -> immutableLines);
+	}
+
+	/**
+	 * Parse a {@link Mail} from its raw bytes, like those provided by
+	 * {@link #parseMappedMBox(Path)}. The lines are decoded only when they are
+	 * requested.
+	 * 
+	 * @param bytes the bytes of the mail, from its position to its limit
+	 * @return the parsed {@link Mail}
+	 */
+	public Mail parseMail(ByteBuffer bytes) {
+		Supplier<List<String>> linesSupplier = cache(() -> {
+			return Collections.unmodifiableList(ByteLines.decode(bytes, mboxCharset));
+		});
+		return parseMail(bytes, linesSupplier);
+	}
+
+	/**
+	 * Parse a {@link Mail} from a stream of its lines, each line being followed by
+	 * <code>\n</code> but the last one, like when joining {@link Mail#lines()}.
+	 * Only the <code>From</code> line and the headers are read immediately. The
+	 * whole stream is read only when the body or the lines are requested, so a
+	 * large attachment is not read if only the headers are needed.
+	 * 
+	 * @param mailStream provides a new {@link InputStream} on the mail each time
+	 *                   it is called
+	 * @return the parsed {@link Mail}
+	 */
+	public Mail parseMailLines(Supplier<InputStream> mailStream) {
+		ByteBuffer head = ByteBuffer.wrap(readHead(mailStream));
+		Supplier<ByteBuffer> completeBytesSupplier = cache(() -> ByteBuffer.wrap(readAll(mailStream)));
+		Supplier<List<String>> linesSupplier = cache(() -> {
+			ByteBuffer completeBytes = completeBytesSupplier.get();
+			// Ignore the line break added to terminate the last line
+			String content = new String(completeBytes.array(), 0, completeBytes.limit() - 1, mboxCharset);
+			return List.of(content.split("\n", -1));
+		});
+		return parseMail(head, linesSupplier, completeBytesSupplier);
+	}
+
+	/**
+	 * Read the <code>From</code> line and the headers, up to the blank line
+	 * separating them from the body, included.
+	 */
+	private byte[] readHead(Supplier<InputStream> mailStream) {
+		try (InputStream stream = new BufferedInputStream(mailStream.get())) {
+			ByteArrayOutputStream head = new ByteArrayOutputStream();
+			int lineLength = 0;
+			int b;
+			while ((b = stream.read()) != -1) {
+				head.write(b);
+				if (b == '\r' || b == '\n') {
+					if (b == '\r') {
+						stream.mark(1);
+						int next = stream.read();
+						if (next == '\n') {
+							head.write(next);
+						} else {
+							stream.reset();
+						}
+					}
+					if (lineLength == 0) {
+						return head.toByteArray();
+					}
+					lineLength = 0;
+				} else {
+					lineLength++;
+				}
+			}
+			// No body, terminate the last line like the complete content
+			head.write('\n');
+			return head.toByteArray();
+		} catch (IOException cause) {
+			throw new RuntimeException("Cannot read mail headers", cause);
+		}
+	}
+
+	/**
+	 * Read the whole mail, with a line break terminating the last line.
+	 */
+	private byte[] readAll(Supplier<InputStream> mailStream) {
+		try (InputStream stream = mailStream.get()) {
+			byte[] bytes = stream.readAllBytes();
+			byte[] terminatedBytes = Arrays.copyOf(bytes, bytes.length + 1);
+			terminatedBytes[bytes.length] = '\n';
+			return terminatedBytes;
+		} catch (IOException cause) {
+			throw new RuntimeException("Cannot read mail", cause);
+		}
+	}
 
+	private Mail parseMail(ByteBuffer bytes, Supplier<List<String>> linesSupplier) {
+		return parseMail(bytes, linesSupplier, () -> bytes);
+	}
+
+	/**
+	 * @param head                  the bytes to parse the headers from, which
+	 *                              start like the complete bytes
+	 * @param linesSupplier         the lines of the mail
+	 * @param completeBytesSupplier the bytes to parse the body from
+	 */
+	private Mail parseMail(ByteBuffer head, Supplier<List<String>> linesSupplier,
+			Supplier<ByteBuffer> completeBytesSupplier) {
+		ByteLines.Iterator linesIterator = ByteLines.iterator(head, mboxCharset);
 		String fromLine = linesIterator.next();
-		Pattern fromPattern = Pattern.compile("^From ([^ ]+) (.*)$");
 		Matcher fromMatcher = fromPattern.matcher(fromLine);
 		if (!fromMatcher.find()) {
 			throw new RuntimeException("Invalid FROM line: " + fromLine);
@@ -137,17 +384,20 @@ public class MBoxParser {
 		ZonedDateTime receivedDate = parseTimestamp(fromMatcher.group(2));
 		Supplier<ZonedDateTime> receivedDateSupplier = () -> receivedDate;
 
-		Parsed parsed = parse(linesIterator);
+		ByteBuffer content = linesIterator.remaining();
+		int fromLineLength = head.remaining() - content.remaining();
+		Parsed parsed = parse(content, () -> skip(completeBytesSupplier.get(), fromLineLength));
 
-		Supplier<Mail.Address> senderToSupplier = () -> {
+		// Sender and receivers are requested repeatedly, so parse them once
+		Supplier<Mail.Address> senderToSupplier = cache(() -> {
 			Address senderAddress = parsed.headers().tryGet("From")//
 					.map(Header::body)//
 					.map(addressParser)//
 					.orElseThrow(() -> new IllegalStateException("No sender for " + id));
 			return Mail.Address.createWithCanonEmail(senderAddress.name(), senderAddress.email());
-		};
+		});
 
-		Supplier<Stream<Mail.Address>> receiversSupplier = () -> {
+		Supplier<List<Mail.Address>> receiversListSupplier = cache(() -> {
 			return Stream.of(//
 					parsed.headers().tryGet("To"), //
 					parsed.headers().tryGet("Cc"), //
@@ -155,27 +405,16 @@ public class MBoxParser {
 			)//
 					.filter(Optional::isPresent).map(Optional::get)//
 					.map(Header::body)//
-					.flatMap(addresses -> splitAddresses(addresses))//
-					.map(addressParser)//
-					.map(address -> Mail.Address.createWithCanonEmail(address.name(), address.email()));
-		};
+					.flatMap(addressesParser)//
+					.map(address -> Mail.Address.createWithCanonEmail(address.name(), address.email()))//
+					.toList();
+		});
+		Supplier<Stream<Mail.Address>> receiversSupplier = () -> receiversListSupplier.get().stream();
 
-		return new Mail.Base(id, lines, parsed.headersSupplier(), parsed.bodySupplier(), receivedDateSupplier,
+		return new Mail.Base(id, linesSupplier, parsed.headersSupplier(), parsed.bodySupplier(), receivedDateSupplier,
 				senderToSupplier, receiversSupplier);
 	}
 
-	private Stream<String> splitAddresses(String addresses) {
-		StringEscaper escaper = StringEscaper.Builder.create()//
-				.escapeWith('$')//
-				.whenEnclosedIn('"', sub -> sub.replace(',', 'µ'))//
-				.build();
-
-		return Stream.of(addresses)//
-				.map(escaper::escape)//
-				.flatMap(str -> Stream.of(str.split(",")))//
-				.map(escaper::unescape);
-	}
-
 	record Parsed(Supplier<Headers> headersSupplier, Supplier<Body> bodySupplier) {
 		Headers headers() {
 			return headersSupplier.get();
@@ -186,18 +425,37 @@ public class MBoxParser {
 		}
 	}
 
-	private Parsed parse(Iterator<String> linesIterator) {
+	private Parsed parse(ByteBuffer content) {
+		return parse(content, () -> content);
+	}
+
+	/**
+	 * @param content                 the bytes to parse the headers from
+	 * @param completeContentSupplier the bytes to parse the body from, which
+	 *                                start like the content
+	 */
+	private Parsed parse(ByteBuffer content, Supplier<ByteBuffer> completeContentSupplier) {
+		ByteLines.Iterator linesIterator = ByteLines.iterator(content, mboxCharset);
 		Supplier<Headers> headersSupplier = () -> parseHeaders(linesIterator);
 		// The lines can be consumed only once, so cache the result
 		Supplier<Headers> actualHeadersSupplier = cache(headersSupplier);
 
-		Supplier<Body> bodySupplier = () -> parseBody(linesIterator, actualHeadersSupplier.get());
-		// The lines can be consumed only once, so cache the result
+		// The headers must be consumed first to reach the body
+		Supplier<Body> bodySupplier = () -> {
+			Headers headers = actualHeadersSupplier.get();
+			int headersLength = content.remaining() - linesIterator.remaining().remaining();
+			return parseBody(skip(completeContentSupplier.get(), headersLength), headers);
+		};
+		// The body is not copied, so cache the result to parse it once
 		Supplier<Body> actualBodySupplier = cache(bodySupplier);
 
 		return new Parsed(actualHeadersSupplier, actualBodySupplier);
 	}
 
+	private static ByteBuffer skip(ByteBuffer bytes, int length) {
+		return bytes.slice(bytes.position() + length, bytes.remaining() - length);
+	}
+
 	private <T> Supplier<T> cache(Supplier<T> supplier) {
 		var cache = new Object() {
 			T value = null;
@@ -211,45 +469,28 @@ public class MBoxParser {
 	}
 
 	private Headers parseHeaders(Iterator<String> linesIterator) {
-		List<String> headerLines = new LinkedList<>();
-		while (linesIterator.hasNext()) {
-			String line = linesIterator.next();
-			if (line.isEmpty()) {
-				break;
-			} else {
-				headerLines.add(line);
-			}
-		}
-
-		headerLines = unfoldHeaders(headerLines);
-
 		// TODO Parse headers following rfc822
 		// - field-names
 		// - unstructured field bodies
 		// - structured field bodies
 		// https://datatracker.ietf.org/doc/html/rfc822#section-3.1.2
-		Map<String, List<String>> headers = new LinkedHashMap<>();
-		for (String line : headerLines) {
-			Matcher headerMatcher = headerPattern.matcher(line);
-			if (!headerMatcher.find()) {
-				throw new RuntimeException("Invalid header line: " + line);
-			}
-			String key = headerMatcher.group(1);
-			String value = headerMatcher.group(2).trim();
-
-			String decodedValue = Encoding.decodeAll(value);
-
-			// Force case so common keys are kept together
-			headers.compute(key.toLowerCase(), (k, v) -> {
-				if (v == null) {
-					v = new LinkedList<>();
+		// Values are decoded only when their header is requested
+		CompactHeaders.Builder headers = CompactHeaders.builder(Encoding::decodeAll, this::parseHeaderSymbols);
+		while (linesIterator.hasNext()) {
+			String line = linesIterator.next();
+			if (line.isEmpty()) {
+				break;
+			} else if (line.startsWith(" ") || line.startsWith("\t")) {
+				headers.unfold(line, 1);
+			} else {
+				int colonIndex = line.indexOf(':');
+				if (colonIndex < 1) {
+					throw new RuntimeException("Invalid header line: " + line);
 				}
-				v.add(decodedValue);
-				return v;
-			});
+				headers.add(line, colonIndex);
+			}
 		}
-
-		return Headers.createFromMap(headers, this::parseHeaderSymbols);
+		return headers.build();
 	}
 
 	private Stream<Symbol> parseHeaderSymbols(String name, String body) {
@@ -314,16 +555,91 @@ public class MBoxParser {
 		return dateTime;
 	}
 
-	private Body parseBody(Iterator<String> linesIterator, Headers headers) {
-		StringBuilder bodyContentBuilder = new StringBuilder();
-		String separator = lineSeparator();
-		while (linesIterator.hasNext()) {
-			String line = linesIterator.next();
-			bodyContentBuilder.append(line).append(separator);
+	/**
+	 * End each line with the platform line separator, as when the lines of the
+	 * body were joined, so texts are the same whether the mbox uses CRLF or LF.
+	 */
+	private static ByteBuffer normalizeLineBreaks(ByteBuffer bytes) {
+		byte[] separator = lineSeparator().getBytes(StandardCharsets.US_ASCII);
+		if (hasNormalizedLineBreaks(bytes, separator)) {
+			// Shares the bytes, but not the position consumed by the decoder
+			return bytes.duplicate();
+		}
+		ByteBuffer input = bytes.duplicate();
+		BufferOutputStream output = new BufferOutputStream(input.remaining() + separator.length);
+		boolean isLineStarted = false;
+		while (input.hasRemaining()) {
+			byte b = input.get();
+			if (b == '\r' || b == '\n') {
+				// CRLF is a single line break
+				if (b == '\r' && input.hasRemaining() && input.get(input.position()) == '\n') {
+					input.get();
+				}
+				output.writeBytes(separator);
+				isLineStarted = false;
+			} else {
+				output.write(b);
+				isLineStarted = true;
+			}
+		}
+		if (isLineStarted) {
+			output.writeBytes(separator);
 		}
-		String bodyContent = bodyContentBuilder.toString();
-		RawBody rawBody = new RawBody(bodyContent);
+		return output.toByteBuffer();
+	}
 
+	/**
+	 * @return <code>true</code> if all the line breaks are already the line
+	 *         separator and the last line is terminated, so the bytes can be used
+	 *         without copy
+	 */
+	private static boolean hasNormalizedLineBreaks(ByteBuffer bytes, byte[] separator) {
+		int limit = bytes.limit();
+		int position = bytes.position();
+		if (limit - position < separator.length || !hasSeparatorAt(bytes, limit - separator.length, separator)) {
+			return false;
+		}
+		while (position < limit) {
+			byte b = bytes.get(position);
+			if (b == '\r' || b == '\n') {
+				if (!hasSeparatorAt(bytes, position, separator)) {
+					return false;
+				}
+				position += separator.length;
+			} else {
+				position++;
+			}
+		}
+		return true;
+	}
+
+	private static boolean hasSeparatorAt(ByteBuffer bytes, int position, byte[] separator) {
+		if (position + separator.length > bytes.limit()) {
+			return false;
+		}
+		for (int i = 0; i < separator.length; i++) {
+			if (bytes.get(position + i) != separator[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * A {@link ByteArrayOutputStream} which provides its bytes without copying
+	 * them.
+	 */
+	private static class BufferOutputStream extends ByteArrayOutputStream {
+		BufferOutputStream(int size) {
+			super(size);
+		}
+
+		ByteBuffer toByteBuffer() {
+			return ByteBuffer.wrap(buf, 0, count);
+		}
+	}
+
+	private Body parseBody(ByteBuffer bodyBytes, Headers headers) {
 		// References:
 		// https://datatracker.ietf.org/doc/html/rfc2045#section-6.1
 		// TODO Support ietf-token
@@ -349,13 +665,13 @@ public class MBoxParser {
 				.orElse(Encoding._7BIT);
 
 		Encoding.Decoder decoder = encoding.decoder();
-		FromString stringDecoder = decoder.fromString(bodyContent);
-		Function<String, byte[]> bytesDecoder = decoder.forBytes();
 
 		Body body = headers.tryGet("Content-Type").map(ContentType::parse).<Body>map(contentType -> {
-			Supplier<String> stringSupplier = () -> stringDecoder
-					.toString(contentType.charset().orElse(Charset.defaultCharset()));
-			Supplier<byte[]> bytesSupplier = () -> bytesDecoder.apply(bodyContent);
+			// Decoded bytes are streamed to the charset decoder without intermediary copy
+			Supplier<String> stringSupplier = () -> decoder.decodeToString(normalizeLineBreaks(bodyBytes),
+					contentType.charset().orElse(Charset.defaultCharset()));
+			// Attachments are decoded only if their bytes are requested
+			EncodedContent encodedContent = new EncodedContent(bodyBytes, encoding);
 			if (contentType.mimeType().equals(MimeType.Text.PLAIN)) {
 				// TODO Deduplicate class + mime type
 				return new TextualBody(MimeType.Text.PLAIN, stringSupplier.get());
@@ -378,71 +694,49 @@ public class MBoxParser {
 				return new IcsBody(MimeType.Application.ICS, stringSupplier.get(), contentType.name().get());
 			} else if (contentType.mimeType().equals(MimeType.Application.PDF)) {
 				// https://opensource.adobe.com/dc-acrobat-sdk-docs/pdflsdk/#pdf-reference
-				return new NamedBinaryBody(MimeType.Application.PDF, bytesSupplier.get(), contentType.name().get());
+				return new NamedBinaryBody(MimeType.Application.PDF, encodedContent, contentType.name().get());
 			} else if (contentType.mimeType().equals(MimeType.Application.WORD)) {
-				return new NamedBinaryBody(MimeType.Application.WORD, bytesSupplier.get(), contentType.name().get());
+				return new NamedBinaryBody(MimeType.Application.WORD, encodedContent, contentType.name().get());
 			} else if (contentType.mimeType().equals(MimeType.Application.SPREADSHEET)) {
-				return new NamedBinaryBody(MimeType.Application.SPREADSHEET, bytesSupplier.get(),
+				return new NamedBinaryBody(MimeType.Application.SPREADSHEET, encodedContent,
 						contentType.name().get());
 			} else if (contentType.mimeType().equals(MimeType.Image.PNG)) {
-				return new ImageBody(MimeType.Image.PNG, bytesSupplier.get());
+				return new ImageBody(MimeType.Image.PNG, encodedContent);
 			} else if (contentType.mimeType().equals(MimeType.Image.JPEG)) {
-				return new ImageBody(MimeType.Image.JPEG, bytesSupplier.get());
+				return new ImageBody(MimeType.Image.JPEG, encodedContent);
 			} else if (contentType.mimeType().equals(MimeType.Image.GIF)) {
-				return new ImageBody(MimeType.Image.GIF, bytesSupplier.get());
+				return new ImageBody(MimeType.Image.GIF, encodedContent);
 			} else if (contentType.mimeType().equals(MimeType.Image.HEIC)) {
-				return new ImageBody(MimeType.Image.HEIC, bytesSupplier.get());
+				return new ImageBody(MimeType.Image.HEIC, encodedContent);
 			} else if (contentType.mimeType().equals(MimeType.Video.MP4)) {
-				return new VideoBody(MimeType.Video.MP4, bytesSupplier.get());
+				return new VideoBody(MimeType.Video.MP4, encodedContent);
 			} else if (contentType.mimeType().equals(MimeType.Multipart.MIXED)) {
 				// References:
 				// https://datatracker.ietf.org/doc/html/rfc2046#section-5.1.3
 				// TODO Check reference to properly parse it
 				// TODO Default multipart, or if not recognized, should be considered as mixed
-				String boundary = contentType.boundary().get();
-				String boundaryRegex = "(^|\\r?\\n)--" + boundary + "(--)?(\\r?\\n|$)";
-				return new ComposedBody(MimeType.Multipart.MIXED, Stream.of(bodyContent.split(boundaryRegex))//
-						.skip(1)// Ignore first part
-						.map(part -> parse(part.lines().iterator()).body())//
-						.toList()//
-				);
+				return new ComposedBody(MimeType.Multipart.MIXED, parseParts(bodyBytes, contentType));
 			} else if (contentType.mimeType().equals(MimeType.Multipart.ALTERNATIVE)) {
 				// References:
 				// https://datatracker.ietf.org/doc/html/rfc2046#section-5.1.4
 				// TODO Check reference to properly parse it
-				String boundary = contentType.boundary().get();
-				String boundaryRegex = "(^|\\r?\\n)--" + boundary + "(--)?(\\r?\\n|$)";
-				return new ComposedBody(MimeType.Multipart.ALTERNATIVE, Stream.of(bodyContent.split(boundaryRegex))//
-						.skip(1)// Ignore first part
-						.map(part -> parse(part.lines().iterator()).body())//
-						.toList()//
-				);
+				return new ComposedBody(MimeType.Multipart.ALTERNATIVE, parseParts(bodyBytes, contentType));
 			} else if (contentType.mimeType().equals(MimeType.Multipart.RELATED)) {
 				// References:
 				// https://datatracker.ietf.org/doc/html/rfc2387
 				// TODO Check reference to properly parse it
-				String boundary = contentType.boundary().get();
-				String boundaryRegex = "(^|\\r?\\n)--" + boundary + "(--)?(\\r?\\n|$)";
-				return new ComposedBody(MimeType.Multipart.RELATED, Stream.of(bodyContent.split(boundaryRegex))//
-						.skip(1)// Ignore first part
-						.map(part -> parse(part.lines().iterator()).body())//
-						.toList());
+				return new ComposedBody(MimeType.Multipart.RELATED, parseParts(bodyBytes, contentType));
 			} else if (contentType.mimeType().equals(MimeType.Multipart.REPORT)) {
 				// References:
 				// https://datatracker.ietf.org/doc/html/rfc6522
 				// TODO Check reference to properly parse it
-				String boundary = contentType.boundary().get();
-				String boundaryRegex = "(^|\\r?\\n)--" + boundary + "(--)?(\\r?\\n|$)";
-				return new ComposedBody(MimeType.Multipart.REPORT, Stream.of(bodyContent.split(boundaryRegex))//
-						.skip(1)// Ignore first part
-						.map(part -> parse(part.lines().iterator()).body())//
-						.toList());
+				return new ComposedBody(MimeType.Multipart.REPORT, parseParts(bodyBytes, contentType));
 			} else if (contentType.mimeType().equals(MimeType.Application.OCTET_STREAM)) {
 				// TODO Should we be careful of application/octet-stream for security?
 				// TODO Retrieve type from content if possible, otherwise from name
 				return contentType.name().map(name -> {
 					if (name.endsWith(".pdf")) {
-						return new NamedBinaryBody(MimeType.Application.OCTET_STREAM, bytesSupplier.get(),
+						return new NamedBinaryBody(MimeType.Application.OCTET_STREAM, encodedContent,
 								contentType.name().get());
 					} else {
 						throw new RuntimeException("Not supported: " + name);
@@ -451,11 +745,18 @@ public class MBoxParser {
 			} else {
 				throw new RuntimeException("Not supported: " + contentType);
 			}
-		}).orElse(rawBody);
+		}).orElseGet(() -> new RawBody(mboxCharset.decode(bodyBytes.duplicate()).toString()));
 
 		return body;
 	}
 
+	private List<Body> parseParts(ByteBuffer bodyBytes, ContentType contentType) {
+		String boundary = contentType.boundary().get();
+		return multipartSplitters.apply(boundary).split(bodyBytes).stream()//
+				.map(part -> parse(part).body())//
+				.toList();
+	}
+
 	interface ContentType {
 
 		MimeType mimeType();
@@ -629,21 +930,35 @@ public class MBoxParser {
 	}
 
 	public static class BinaryBody extends TypedBody implements Mail.Body.Binary {
-		private final byte[] bytes;
+		private final EncodedContent content;
 
 		public BinaryBody(MimeType mimeType, byte[] bytes) {
+			this(mimeType, EncodedContent.ofDecoded(bytes));
+		}
+
+		BinaryBody(MimeType mimeType, EncodedContent content) {
 			super(mimeType);
-			this.bytes = bytes;
+			this.content = content;
 		}
 
 		@Override
 		public byte[] bytes() {
-			return bytes;
+			return content.decode();
+		}
+
+		@Override
+		public long size() {
+			return content.decodedSize();
+		}
+
+		@Override
+		public InputStream inputStream() {
+			return content.inputStream();
 		}
 
 		@Override
 		public String toString() {
-			return "[" + mimeType() + "] " + bytes.length + " bytes";
+			return "[" + mimeType() + "] " + size() + " bytes";
 		}
 	}
 
@@ -655,6 +970,11 @@ public class MBoxParser {
 			this.name = name;
 		}
 
+		NamedBinaryBody(MimeType mimeType, EncodedContent content, String name) {
+			super(mimeType, content);
+			this.name = name;
+		}
+
 		@Override
 		public String name() {
 			return name;
@@ -666,7 +986,7 @@ public class MBoxParser {
 		}
 	}
 
-	public static class ImageBody extends TypedBody {
+	public static class ImageBody extends BinaryBody {
 		enum Format {
 			PNG(MimeType.Image.PNG), //
 			JPEG(MimeType.Image.JPEG), //
@@ -689,15 +1009,12 @@ public class MBoxParser {
 			}
 		}
 
-		private final byte[] bytes;
-
 		public ImageBody(MimeType mimeType, byte[] bytes) {
-			super(mimeType);
-			this.bytes = bytes;
+			super(mimeType, bytes);
 		}
 
-		public byte[] bytes() {
-			return bytes;
+		ImageBody(MimeType mimeType, EncodedContent content) {
+			super(mimeType, content);
 		}
 
 		public Format format() {
@@ -706,11 +1023,11 @@ public class MBoxParser {
 
 		@Override
 		public String toString() {
-			return "[" + mimeType() + "]" + bytes.length;
+			return "[" + mimeType() + "]" + size();
 		}
 	}
 
-	public static class VideoBody extends TypedBody {
+	public static class VideoBody extends BinaryBody {
 		enum Format {
 			MP4(MimeType.Video.MP4), //
 			;
@@ -730,15 +1047,12 @@ public class MBoxParser {
 			}
 		}
 
-		private final byte[] bytes;
-
 		public VideoBody(MimeType mimeType, byte[] bytes) {
-			super(mimeType);
-			this.bytes = bytes;
+			super(mimeType, bytes);
 		}
 
-		public byte[] bytes() {
-			return bytes;
+		VideoBody(MimeType mimeType, EncodedContent content) {
+			super(mimeType, content);
 		}
 
 		public Format format() {
@@ -747,7 +1061,7 @@ public class MBoxParser {
 
 		@Override
 		public String toString() {
-			return "[" + mimeType() + "]" + bytes.length;
+			return "[" + mimeType() + "]" + size();
 		}
 	}
 
@@ -799,209 +1113,77 @@ public class MBoxParser {
 		}
 	}
 
-	private List<String> unfoldHeaders(List<String> lines) {
-		LinkedList<String> unfoldedLines = new LinkedList<>();
-		for (String line : lines) {
-			if (line.startsWith(" ") || line.startsWith("\t")) {
-				unfoldedLines.add(unfoldedLines.removeLast() + line.substring(1));
-			} else {
-				unfoldedLines.add(line);
-			}
-		}
-		return unfoldedLines;
-	}
-
 	public enum Encoding {
 		BINARY(//
-				(encoded) -> {
-					// TODO Is String input relevant in this case?
-					throw new RuntimeException("Not implemented yet");
-				}, //
-				(encoded, charset) -> {
-					// TODO Is String input relevant in this case?
-					throw new RuntimeException("Not implemented yet");
-				} //
+				encoded -> encoded//
 		), //
 		_7BIT(//
 				// References:
 				// https://datatracker.ietf.org/doc/html/rfc2045#autoid-9
 				// https://datatracker.ietf.org/doc/html/rfc2045#section-6.2
-				(encoded) -> {
-					throw new RuntimeException("Not implemented yet");
-				}, //
-				(encoded, charset) -> {
-					return encoded;
-				} //
+				encoded -> encoded//
 		), //
 		_8BIT(//
-				(encoded) -> {
-					throw new RuntimeException("Not implemented yet");
-				}, //
-				(encoded, charset) -> {
-					return encoded;
-				} //
+				encoded -> encoded//
 		), //
 		BASE64(//
-				(encoded) -> {
-					return Base64.getMimeDecoder().decode(encoded);
-				}, //
-				(encoded, charset) -> {
-					return new String(Base64.getMimeDecoder().decode(encoded), charset);
-				} //
+				encoded -> Base64.getMimeDecoder().wrap(encoded)//
 		), //
 		QUOTED_PRINTABLE(//
-				(encoded) -> {
-					throw new RuntimeException("Not implemented yet");
-				}, //
-				(encoded, charset) -> {
-					StringReader reader = new StringReader(encoded);
-					ByteArrayOutputStream out = new ByteArrayOutputStream();
-					try {
-						int character;
-						List<Integer> whiteSpaces = new LinkedList<>();
-						Runnable whiteSpacesWriter = () -> {
-							whiteSpaces.forEach(out::write);
-							whiteSpaces.clear();
-						};
-						while ((character = reader.read()) != -1) {
-							if (character == 9 || character == 32) {
-								whiteSpaces.add(character);
-							} else if (character == codePointOf('\r')) {
-								whiteSpaces.clear();
-								out.write(character);
-								out.write(reader.read());// Assume \n
-							} else if (character == codePointOf('=')) {
-								whiteSpacesWriter.run();
-								char[] buffer = new char[2];
-								reader.read(buffer);
-								if (buffer[0] == codePointOf('\r') && buffer[1] == codePointOf('\n')) {
-									// Simple line break to fit 76 characters
-								} else {
-									int decodedCharacter = Integer.parseInt(new String(buffer), 16);
-									out.write(decodedCharacter);
-								}
-							} else if (33 <= character && character <= 60 || 62 <= character && character <= 126) {
-								whiteSpacesWriter.run();
-								Character.toString(character);
-								out.write(character);
-							} else {
-								throw new RuntimeException("Not supported character: " + character);
-							}
-						}
-					} catch (IOException cause) {
-						throw new IllegalArgumentException("Cannot read: " + encoded);
-					}
-					return out.toString(charset);
-				} //
+				QuotedPrintableInputStream::forBody//
 		), //
 		B(//
-				(encoded) -> {
-					throw new RuntimeException("Not implemented yet");
-				}, //
-				(encoded, charset) -> {
-					return new String(Base64.getMimeDecoder().decode(encoded), charset);
-				} //
+				encoded -> Base64.getMimeDecoder().wrap(encoded)//
 		), //
 		Q(//
-				(encoded) -> {
-					throw new RuntimeException("Not implemented yet");
-				}, //
-				(encoded, charset) -> {
-					StringReader reader = new StringReader(encoded);
-					ByteArrayOutputStream out = new ByteArrayOutputStream();
-					try {
-						int character;
-						List<Integer> whiteSpaces = new LinkedList<>();
-						Runnable whiteSpacesWriter = () -> {
-							whiteSpaces.forEach(out::write);
-							whiteSpaces.clear();
-						};
-						while ((character = reader.read()) != -1) {
-							// TODO Finish
-							if (character == codePointOf('_')) {
-								whiteSpacesWriter.run();
-								out.write(' ');
-							} else if (character == 9 || character == 32) {
-								whiteSpaces.add(character);
-							} else if (character == codePointOf('\r')) {
-								whiteSpaces.clear();
-								out.write(character);
-								out.write(reader.read());// Assume \n
-							} else if (character == codePointOf('=')) {
-								whiteSpacesWriter.run();
-								char[] buffer = new char[2];
-								reader.read(buffer);
-								if (buffer[0] == codePointOf('\r') && buffer[1] == codePointOf('\n')) {
-									// Simple line break to fit 76 characters
-								} else {
-									int decodedCharacter = Integer.parseInt(new String(buffer), 16);
-									out.write(decodedCharacter);
-								}
-							} else if (33 <= character && character <= 60 || 62 <= character && character <= 126) {
-								whiteSpacesWriter.run();
-								Character.toString(character);
-								out.write(character);
-							} else {
-								throw new RuntimeException("Not supported character: " + character);
-							}
-						}
-					} catch (IOException cause) {
-						throw new IllegalArgumentException("Cannot read: " + encoded);
-					}
-					return out.toString(charset);
-				} //
+				QuotedPrintableInputStream::forEncodedWord//
 		);//
 
-		private final Function<String, byte[]> byteDecoder;
-		private final BiFunction<String, Charset, String> stringDecoder;
+		private final Decoder decoder;
 
-		private Encoding(Function<String, byte[]> byteDecoder, BiFunction<String, Charset, String> stringDecoder) {
-			this.byteDecoder = byteDecoder;
-			this.stringDecoder = stringDecoder;
+		private Encoding(Decoder decoder) {
+			this.decoder = decoder;
 		}
 
 		Decoder decoder() {
-			return new Decoder() {
-
-				@Override
-				public Function<String, byte[]> forBytes() {
-					return byteDecoder;
-				}
-
-				@Override
-				public Function<String, String> forString(Charset charset) {
-					return content -> stringDecoder.apply(content, charset);
-				}
-
-				@Override
-				public FromString fromString(String content) {
-					return new Decoder.FromString() {
-
-						@Override
-						public byte[] toBytes() {
-							return byteDecoder.apply(content);
-						}
-
-						@Override
-						public String toString(Charset charset) {
-							return stringDecoder.apply(content, charset);
-						}
-					};
-				}
-			};
+			return decoder;
 		}
 
+		/**
+		 * A {@link Decoder} decodes bytes while they are read, so the decoded content
+		 * never needs to be fully in memory unless requested.
+		 */
 		interface Decoder {
-			Function<String, byte[]> forBytes();
+			InputStream decode(InputStream encoded);
 
-			Function<String, String> forString(Charset charset);
+			default InputStream decode(ByteBuffer encoded) {
+				return decode(new ByteBufferInputStream(encoded));
+			}
 
-			Decoder.FromString fromString(String content);
+			default Reader decode(ByteBuffer encoded, Charset charset) {
+				return new InputStreamReader(decode(encoded), charset);
+			}
 
-			interface FromString {
-				byte[] toBytes();
+			default byte[] decodeToBytes(ByteBuffer encoded) {
+				try (InputStream stream = decode(encoded)) {
+					return stream.readAllBytes();
+				} catch (IOException cause) {
+					throw new RuntimeException("Cannot decode bytes", cause);
+				}
+			}
 
-				String toString(Charset charset);
+			default String decodeToString(ByteBuffer encoded, Charset charset) {
+				StringBuilder builder = new StringBuilder(encoded.remaining());
+				char[] buffer = new char[8192];
+				try (Reader reader = decode(encoded, charset)) {
+					int count;
+					while ((count = reader.read(buffer)) != -1) {
+						builder.append(buffer, 0, count);
+					}
+				} catch (IOException cause) {
+					throw new RuntimeException("Cannot decode string", cause);
+				}
+				return builder.toString();
 			}
 		}
 
@@ -1011,9 +1193,9 @@ public class MBoxParser {
 			return ENCODED_PATTERN.matcher(value).replaceAll(match -> {
 				Charset charset = Charset.forName(match.group(1));
 				Encoding encoding = Encoding.valueOf(match.group(2).toUpperCase());
-				UnaryOperator<String> decoder = encoding.decoder().forString(charset)::apply;
-				String encoded = match.group(3);
-				return decoder.apply(encoded);
+				// Encoded words are ASCII only, so each character is a single byte
+				ByteBuffer encoded = StandardCharsets.ISO_8859_1.encode(match.group(3));
+				return Matcher.quoteReplacement(encoding.decoder().decodeToString(encoded, charset));
 			});
 		}
 	}
@@ -1068,57 +1250,16 @@ public class MBoxParser {
 			this(email, Optional.empty());
 		}
 
-		static Function<String, Optional<Address>> nameEmailParser(Pattern pattern,
-				Function<Matcher, String> nameExtractor, Function<Matcher, String> emailExtractor) {
-			return addressStr -> {
-				Matcher matcher = pattern.matcher(addressStr);
-				if (matcher.find()) {
-					String name = nameExtractor.apply(matcher);
-					String email = emailExtractor.apply(matcher);
-					return Optional.of(new Address(email, Optional.of(name)));
-				}
-				return Optional.empty();
-			};
-		}
-
-		static Function<String, Optional<Address>> emailParser(Pattern pattern,
-				Function<Matcher, String> emailExtractor) {
-			return addressStr -> {
-				Matcher matcher = pattern.matcher(addressStr);
-				if (matcher.find()) {
-					String email = emailExtractor.apply(matcher);
-					return Optional.of(new Address(email));
-				}
-				return Optional.empty();
-			};
+		public static Function<String, Address> parser() {
+			return addressStr -> AddressTokenizer.parse(addressStr, 0, addressStr.length());
 		}
 
-		public static Function<String, Address> parser() {
-			UnaryOperator<Optional<Address>> cleanNameIfEmpty = addressOpt -> addressOpt.map(address -> {
-				return new Address(address.email(), address.name().filter(name -> !name.isBlank()));
-			});
-			List<Function<String, Optional<Address>>> optionalParsers = List.of(//
-					nameEmailParser(//
-							Pattern.compile("^\\s*\"?(.*?)\"?\\s*<([^>]+)>\\s*$"), //
-							matcher -> matcher.group(1), matcher -> matcher.group(2)//
-					).andThen(cleanNameIfEmpty), //
-					nameEmailParser(//
-							Pattern.compile("^\\s*\"?(.*?)\"?\\s*\\(([^)]+)\\)\\s*$"), //
-							matcher -> matcher.group(2), matcher -> matcher.group(1)//
-					).andThen(cleanNameIfEmpty), //
-					emailParser(//
-							Pattern.compile("^\\s*<([^>]+)>\\s*$"), //
-							matcher -> matcher.group(1)//
-					)//
-			);
-
-			Function<String, Address> defaultParser = addressStr -> new Address(addressStr.trim());
-
-			return addressStr -> optionalParsers.stream()//
-					.map(optionalParser -> optionalParser.apply(addressStr))//
-					.dropWhile(Optional<Address>::isEmpty)//
-					.map(Optional<Address>::get)//
-					.findFirst().orElseGet(() -> defaultParser.apply(addressStr));
+		/**
+		 * @return a parser of comma-separated addresses, which reads them in a single
+		 *         pass
+		 */
+		public static Function<String, Stream<Address>> listParser() {
+			return addressesStr -> AddressTokenizer.parseList(addressesStr).stream();
 		}
 	}
 }
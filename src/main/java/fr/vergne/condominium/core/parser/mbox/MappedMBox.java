@@ -0,0 +1,193 @@
+package fr.vergne.condominium.core.parser.mbox;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * A {@link MappedMBox} gives access to the bytes of an mbox file through memory
+ * mapping. The file is mapped through windows of limited size, which are
+ * remapped on demand, so files bigger than what a single
+ * {@link MappedByteBuffer} supports can be browsed too.
+ * <p>
+ * Mails are identified without decoding anything: a mail starts with a
+ * <code>From </code> line which is either the first line of the file or
+ * preceded by a blank line. This blank line is not part of any mail.
+ */
+class MappedMBox implements Closeable {
+	private static final long WINDOW_SIZE = 1L << 30;
+	private static final byte[] FROM = { 'F', 'r', 'o', 'm', ' ' };
+
+	private final Path path;
+	private final FileChannel channel;
+	private final long size;
+	private MappedByteBuffer window = null;
+	private long windowStart = 0;
+	private long windowEnd = 0;
+
+	private MappedMBox(Path path, FileChannel channel, long size) {
+		this.path = path;
+		this.channel = channel;
+		this.size = size;
+	}
+
+	public static MappedMBox open(Path path) {
+		try {
+			FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+			return new MappedMBox(path, channel, channel.size());
+		} catch (IOException cause) {
+			throw new RuntimeException("Cannot open " + path, cause);
+		}
+	}
+
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * @param offset the position of the first byte of the slice
+	 * @param length the number of bytes of the slice
+	 * @return a read-only buffer over the requested bytes, which remains valid
+	 *         after this {@link MappedMBox} is closed
+	 */
+	public ByteBuffer slice(long offset, int length) {
+		if (offset < windowStart || offset + length > windowEnd) {
+			map(offset, Math.max(WINDOW_SIZE, length));
+		}
+		return window.slice((int) (offset - windowStart), length).asReadOnlyBuffer();
+	}
+
+	private byte get(long position) {
+		if (position < windowStart || position >= windowEnd) {
+			map(position, WINDOW_SIZE);
+		}
+		return window.get((int) (position - windowStart));
+	}
+
+	private void map(long start, long length) {
+		long actualLength = Math.min(length, size - start);
+		try {
+			window = channel.map(MapMode.READ_ONLY, start, actualLength);
+		} catch (IOException cause) {
+			throw new RuntimeException("Cannot map " + path + " from " + start, cause);
+		}
+		windowStart = start;
+		windowEnd = start + actualLength;
+	}
+
+	/**
+	 * Search the end of the mail starting at the given position. The end excludes
+	 * the blank line separating it from the next mail, or the blank line which
+	 * terminates the file, if any.
+	 *
+	 * @param mailStart the position of the first byte of the mail
+	 * @return the end of the mail and the start of the next one, if any
+	 */
+	Bounds findMailEnd(long mailStart) {
+		long lineStart = mailStart;
+		boolean isPrecededByBlankLine = false;
+		long blankLineStart = -1;
+		while (lineStart < size) {
+			if (isPrecededByBlankLine && lineStart != mailStart && startsWithFrom(lineStart)) {
+				return new Bounds(blankLineStart, lineStart);
+			}
+			long lineEnd = lineStart;
+			byte b = 0;
+			while (lineEnd < size && (b = get(lineEnd)) != '\n' && b != '\r') {
+				lineEnd++;
+			}
+			long nextLineStart = lineEnd;
+			if (lineEnd < size) {
+				nextLineStart++;
+				if (b == '\r' && nextLineStart < size && get(nextLineStart) == '\n') {
+					nextLineStart++;
+				}
+			}
+			isPrecededByBlankLine = lineEnd == lineStart;
+			if (isPrecededByBlankLine) {
+				blankLineStart = lineStart;
+			}
+			lineStart = nextLineStart;
+		}
+		return new Bounds(isPrecededByBlankLine ? blankLineStart : size, size);
+	}
+
+	private boolean startsWithFrom(long position) {
+		if (position + FROM.length > size) {
+			return false;
+		}
+		for (int i = 0; i < FROM.length; i++) {
+			if (get(position + i) != FROM[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	record Bounds(long mailEnd, long nextMailStart) {
+	}
+
+	/**
+	 * Map all the mails of the given {@link MBoxIndex} at once, so they can be
+	 * accessed from several threads. Consecutive mails are grouped into regions
+	 * mapped together, thus limiting the number of mappings.
+	 *
+	 * @param index     the {@link MBoxIndex} of this mbox
+	 * @param firstMail the index of the first mail to map, previous ones being
+	 *                  ignored
+	 * @return a thread-safe function providing the bytes of each indexed mail
+	 *         from the first one to map
+	 */
+	public IntFunction<ByteBuffer> mapMails(MBoxIndex index, int firstMail) {
+		int mailsCount = index.size();
+		int[] mailRegions = new int[mailsCount];
+		List<ByteBuffer> regions = new ArrayList<>();
+		List<Long> regionStarts = new ArrayList<>();
+		int regionFirstMail = firstMail;
+		while (regionFirstMail < mailsCount) {
+			long regionStart = index.offset(regionFirstMail);
+			int regionEndMail = regionFirstMail + 1;
+			while (regionEndMail < mailsCount && index.offset(regionEndMail) + index.length(regionEndMail)
+					- regionStart <= WINDOW_SIZE) {
+				regionEndMail++;
+			}
+			int lastMail = regionEndMail - 1;
+			long regionEnd = index.offset(lastMail) + index.length(lastMail);
+			try {
+				regions.add(channel.map(MapMode.READ_ONLY, regionStart, regionEnd - regionStart));
+			} catch (IOException cause) {
+				throw new RuntimeException("Cannot map " + path + " from " + regionStart, cause);
+			}
+			regionStarts.add(regionStart);
+			Arrays.fill(mailRegions, regionFirstMail, regionEndMail, regions.size() - 1);
+			regionFirstMail = regionEndMail;
+		}
+
+		return mailIndex -> {
+			if (mailIndex < firstMail) {
+				throw new IndexOutOfBoundsException("Mail " + mailIndex + " not mapped, first is " + firstMail);
+			}
+			int region = mailRegions[mailIndex];
+			int offset = (int) (index.offset(mailIndex) - regionStarts.get(region));
+			return regions.get(region).slice(offset, index.length(mailIndex)).asReadOnlyBuffer();
+		};
+	}
+
+	@Override
+	public void close() {
+		try {
+			channel.close();
+		} catch (IOException cause) {
+			throw new RuntimeException("Cannot close " + path, cause);
+		}
+	}
+}
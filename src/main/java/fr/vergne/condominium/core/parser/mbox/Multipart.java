@@ -0,0 +1,169 @@
+package fr.vergne.condominium.core.parser.mbox;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Split a multipart body into its parts, following the delimiters described in
+ * <a href="https://datatracker.ietf.org/doc/html/rfc2046#section-5.1.1">RFC
+ * 2046</a>. The body is browsed once, by boundary matching, and each part
+ * is provided as a slice of the body, so no byte is copied. The preamble before
+ * the first delimiter and the epilogue after the close delimiter are ignored.
+ */
+class Multipart {
+
+	/**
+	 * @param body     the multipart body, from its position to its limit
+	 * @param boundary the boundary of the multipart, as provided in its
+	 *                 <code>Content-Type</code>
+	 * @return the content of each part, headers included
+	 */
+	public static List<ByteBuffer> split(ByteBuffer body, String boundary) {
+		return new Splitter(boundary).split(body);
+	}
+
+	/**
+	 * @param capacity the maximum number of {@link Splitter}s to retain
+	 * @return a thread-safe cache providing the {@link Splitter} of each boundary,
+	 *         which retains the most recently used ones
+	 */
+	public static Function<String, Splitter> cachedSplitters(int capacity) {
+		Map<String, Splitter> splitters = new LinkedHashMap<>(capacity, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Splitter> eldest) {
+				return size() > capacity;
+			}
+		};
+		return boundary -> {
+			synchronized (splitters) {
+				return splitters.computeIfAbsent(boundary, Splitter::new);
+			}
+		};
+	}
+
+	/**
+	 * A {@link Splitter} splits the multipart bodies of a given boundary. The
+	 * delimiters are searched with the Boyer-Moore-Horspool algorithm, which
+	 * table is computed once for the boundary. A {@link Splitter} is immutable,
+	 * so it can be reused by several threads.
+	 */
+	public static class Splitter {
+		private final byte[] dashBoundary;
+		private final int[] shifts;
+
+		Splitter(String boundary) {
+			this.dashBoundary = ("--" + boundary).getBytes(StandardCharsets.US_ASCII);
+			this.shifts = new int[256];
+			Arrays.fill(shifts, dashBoundary.length);
+			for (int i = 0; i < dashBoundary.length - 1; i++) {
+				shifts[dashBoundary[i] & 0xFF] = dashBoundary.length - 1 - i;
+			}
+		}
+
+		/**
+		 * @param body the multipart body, from its position to its limit
+		 * @return the content of each part, headers included
+		 */
+		public List<ByteBuffer> split(ByteBuffer body) {
+			ByteBuffer content = body.slice();
+			int limit = content.limit();
+
+			List<ByteBuffer> parts = new ArrayList<>();
+			int partStart = -1;
+			int searchStart = 0;
+			while (true) {
+				int delimiterStart = findDelimiter(content, searchStart);
+				if (delimiterStart == -1) {
+					// Missing close delimiter, consider the part goes until the end
+					if (partStart != -1) {
+						parts.add(content.slice(partStart, limit - partStart));
+					}
+					return parts;
+				}
+
+				if (partStart != -1) {
+					int partEnd = Math.max(partStart, lineBreakStart(content, delimiterStart));
+					parts.add(content.slice(partStart, partEnd - partStart));
+				}
+
+				int delimiterEnd = delimiterStart + dashBoundary.length;
+				if (delimiterEnd + 1 < limit && content.get(delimiterEnd) == '-'
+						&& content.get(delimiterEnd + 1) == '-') {
+					return parts;
+				}
+				partStart = nextLineStart(content, delimiterEnd);
+				searchStart = partStart;
+			}
+		}
+
+		/**
+		 * @return the position of the first delimiter starting a line from the given
+		 *         position, or -1 if there is none
+		 */
+		private int findDelimiter(ByteBuffer content, int from) {
+			int lastIndex = dashBoundary.length - 1;
+			int lastStart = content.limit() - dashBoundary.length;
+			int start = from;
+			while (start <= lastStart) {
+				int i = lastIndex;
+				while (i >= 0 && content.get(start + i) == dashBoundary[i]) {
+					i--;
+				}
+				if (i < 0 && isLineStart(content, start)) {
+					return start;
+				}
+				start += shifts[content.get(start + lastIndex) & 0xFF];
+			}
+			return -1;
+		}
+	}
+
+	private static boolean isLineStart(ByteBuffer content, int position) {
+		if (position == 0) {
+			return true;
+		}
+		byte previous = content.get(position - 1);
+		return previous == '\n' || previous == '\r';
+	}
+
+	/**
+	 * @return the start of the line break preceding the delimiter, which is part
+	 *         of the delimiter rather than of the part content
+	 */
+	private static int lineBreakStart(ByteBuffer content, int delimiterStart) {
+		int position = delimiterStart;
+		if (position > 0 && content.get(position - 1) == '\n') {
+			position--;
+		}
+		if (position > 0 && content.get(position - 1) == '\r') {
+			position--;
+		}
+		return position;
+	}
+
+	/**
+	 * @return the start of the line following the given position, ignoring the
+	 *         transport padding which might remain on the current line
+	 */
+	private static int nextLineStart(ByteBuffer content, int position) {
+		int limit = content.limit();
+		while (position < limit) {
+			byte b = content.get(position++);
+			if (b == '\n') {
+				return position;
+			} else if (b == '\r') {
+				if (position < limit && content.get(position) == '\n') {
+					position++;
+				}
+				return position;
+			}
+		}
+		return limit;
+	}
+}
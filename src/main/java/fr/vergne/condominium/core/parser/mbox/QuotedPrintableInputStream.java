@@ -0,0 +1,139 @@
+package fr.vergne.condominium.core.parser.mbox;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decode quoted-printable bytes while they are read, as described in
+ * <a href="https://datatracker.ietf.org/doc/html/rfc2045#section-6.7">RFC
+ * 2045</a>. The Q variant of
+ * <a href="https://datatracker.ietf.org/doc/html/rfc2047#section-4.2">RFC
+ * 2047</a>, used in encoded words, additionally decodes <code>_</code> as a
+ * space. Line breaks may be <code>\r\n</code>, <code>\r</code> or
+ * <code>\n</code>, and the white spaces which end a line are ignored.
+ */
+class QuotedPrintableInputStream extends InputStream {
+	private static final int NONE = -2;
+
+	private final InputStream encoded;
+	private final boolean isEncodedWord;
+
+	private byte[] whiteSpaces = new byte[16];
+	private int whiteSpacesCount = 0;
+	private int whiteSpacesWritten = 0;
+	private int pendingByte = NONE;
+	private int nextEncodedByte = NONE;
+
+	private QuotedPrintableInputStream(InputStream encoded, boolean isEncodedWord) {
+		this.encoded = encoded;
+		this.isEncodedWord = isEncodedWord;
+	}
+
+	public static InputStream forBody(InputStream encoded) {
+		return new QuotedPrintableInputStream(encoded, false);
+	}
+
+	public static InputStream forEncodedWord(InputStream encoded) {
+		return new QuotedPrintableInputStream(encoded, true);
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (whiteSpacesWritten < whiteSpacesCount) {
+			return whiteSpaces[whiteSpacesWritten++];
+		}
+		whiteSpacesCount = 0;
+		whiteSpacesWritten = 0;
+
+		if (pendingByte != NONE) {
+			int b = pendingByte;
+			pendingByte = NONE;
+			return b;
+		}
+
+		while (true) {
+			int b = readEncoded();
+			if (b == -1) {
+				// Trailing white spaces are ignored
+				whiteSpacesCount = 0;
+				return -1;
+			} else if (b == ' ' || b == '\t') {
+				addWhiteSpace(b);
+			} else if (b == '\r' || b == '\n') {
+				// Trailing white spaces are ignored
+				whiteSpacesCount = 0;
+				if (b == '\r') {
+					int next = readEncoded();
+					if (next == '\n') {
+						pendingByte = next;
+					} else {
+						nextEncodedByte = next;
+					}
+				}
+				return b;
+			} else if (b == '=') {
+				int high = readEncoded();
+				if (high == '\r' || high == '\n') {
+					// Soft line break to fit 76 characters
+					if (high == '\r') {
+						int next = readEncoded();
+						if (next != '\n') {
+							nextEncodedByte = next;
+						}
+					}
+				} else {
+					int low = readEncoded();
+					return write(hexValue(high) << 4 | hexValue(low));
+				}
+			} else if (b == '_' && isEncodedWord) {
+				return write(' ');
+			} else if (33 <= b && b <= 126) {
+				return write(b);
+			} else {
+				throw new RuntimeException("Not supported character: " + b);
+			}
+		}
+	}
+
+	private int readEncoded() throws IOException {
+		if (nextEncodedByte != NONE) {
+			int b = nextEncodedByte;
+			nextEncodedByte = NONE;
+			return b;
+		}
+		return encoded.read();
+	}
+
+	private void addWhiteSpace(int b) {
+		if (whiteSpacesCount == whiteSpaces.length) {
+			byte[] extended = new byte[2 * whiteSpaces.length];
+			System.arraycopy(whiteSpaces, 0, extended, 0, whiteSpacesCount);
+			whiteSpaces = extended;
+		}
+		whiteSpaces[whiteSpacesCount++] = (byte) b;
+	}
+
+	/**
+	 * Write the given byte after the white spaces preceding it.
+	 */
+	private int write(int b) throws IOException {
+		if (whiteSpacesCount == 0) {
+			return b;
+		}
+		pendingByte = b;
+		return read();
+	}
+
+	private static int hexValue(int b) {
+		int value = Character.digit(b, 16);
+		if (value == -1) {
+			throw new RuntimeException("Not supported hexadecimal character: " + b);
+		}
+		return value;
+	}
+
+	@Override
+	public void close() throws IOException {
+		encoded.close();
+	}
+}
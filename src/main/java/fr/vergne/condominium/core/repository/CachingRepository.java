@@ -0,0 +1,199 @@
+package fr.vergne.condominium.core.repository;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * A {@link CachingRepository} keeps the most recently used resources of another
+ * {@link Repository}, so requesting them again does not reach the storage. The
+ * cache is bounded to a maximum number of resources, the least recently used
+ * being evicted first.
+ * <p>
+ * Modifications are written through: they are applied to the underlying
+ * {@link Repository} before to update the cache. Streams are not cached, they
+ * come directly from the underlying {@link Repository}.
+ * <p>
+ * Since the same instance is provided for each request of a cached resource, a
+ * change made on this instance is visible to the next requests even if the
+ * underlying {@link Repository} is {@link Repository.Updatable} and
+ * {@link Repository.Updatable#update(Object, Object)} was not called yet.
+ */
+public class CachingRepository<K, R> implements Repository<K, R> {
+
+	private final Repository<K, R> repository;
+	private final Map<K, R> cache;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+	// Incremented on each modification, to not cache what was read before it
+	private long generation = 0;
+
+	private CachingRepository(Repository<K, R> repository, int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		}
+		this.repository = repository;
+		this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, R> eldest) {
+				if (size() > capacity) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * @param repository the {@link Repository} to cache the resources of
+	 * @param capacity   the maximum number of resources to keep in cache
+	 */
+	public static <K, R> CachingRepository<K, R> over(Repository<K, R> repository, int capacity) {
+		return new CachingRepository<>(repository, capacity);
+	}
+
+	/**
+	 * Same as {@link #over(Repository, int)}, but the updates are also written
+	 * through.
+	 */
+	public static <K, R> CachingRepository.OfUpdatable<K, R> overUpdatable(Repository.Updatable<K, R> repository,
+			int capacity) {
+		return new CachingRepository.OfUpdatable<>(repository, capacity);
+	}
+
+	@Override
+	public K add(R resource) throws AlredyExistingResourceKeyException {
+		K key = repository.add(resource);
+		keep(key, resource);
+		return key;
+	}
+
+	@Override
+	public Optional<K> key(R resource) {
+		return repository.key(resource);
+	}
+
+	@Override
+	public boolean has(K key) {
+		synchronized (cache) {
+			if (cache.containsKey(key)) {
+				return true;
+			}
+		}
+		return repository.has(key);
+	}
+
+	@Override
+	public Optional<R> get(K key) {
+		long readGeneration;
+		synchronized (cache) {
+			R resource = cache.get(key);
+			if (resource != null) {
+				hits++;
+				return Optional.of(resource);
+			}
+			misses++;
+			readGeneration = generation;
+		}
+		// Don't lock the cache while reading the storage
+		Optional<R> resource = repository.get(key);
+		if (resource.isPresent()) {
+			synchronized (cache) {
+				// A modification during the read may have made it stale
+				if (generation == readGeneration) {
+					R cachedResource = cache.putIfAbsent(key, resource.get());
+					if (cachedResource != null) {
+						// Provide the same instance as the other requests
+						return Optional.of(cachedResource);
+					}
+				}
+			}
+		}
+		return resource;
+	}
+
+	@Override
+	public Optional<R> remove(K key) {
+		Optional<R> resource = repository.remove(key);
+		synchronized (cache) {
+			cache.remove(key);
+			generation++;
+		}
+		return resource;
+	}
+
+	@Override
+	public Stream<Entry<K, R>> stream() {
+		return repository.stream();
+	}
+
+	@Override
+	public Stream<K> streamKeys() {
+		return repository.streamKeys();
+	}
+
+	@Override
+	public Stream<R> streamResources() {
+		return repository.streamResources();
+	}
+
+	/**
+	 * Remove all the resources from the cache, for example after the storage has
+	 * been modified by other means than this {@link Repository}.
+	 */
+	public void invalidate() {
+		synchronized (cache) {
+			cache.clear();
+			generation++;
+		}
+	}
+
+	/**
+	 * @return the counters of this cache since its creation
+	 */
+	public Stats stats() {
+		synchronized (cache) {
+			return new Stats(hits, misses, evictions, cache.size());
+		}
+	}
+
+	/**
+	 * @param hits      the number of resources provided from the cache
+	 * @param misses    the number of resources requested to the storage
+	 * @param evictions the number of resources removed to not exceed the capacity
+	 * @param size      the number of resources currently cached
+	 */
+	public record Stats(long hits, long misses, long evictions, int size) {
+	}
+
+	void keep(K key, R resource) {
+		synchronized (cache) {
+			cache.put(key, resource);
+			generation++;
+		}
+	}
+
+	/**
+	 * A {@link CachingRepository} over an {@link Repository.Updatable}
+	 * {@link Repository}.
+	 */
+	public static class OfUpdatable<K, R> extends CachingRepository<K, R> implements Repository.Updatable<K, R> {
+
+		private final Repository.Updatable<K, R> repository;
+
+		private OfUpdatable(Repository.Updatable<K, R> repository, int capacity) {
+			super(repository, capacity);
+			this.repository = repository;
+		}
+
+		@Override
+		public void update(K key, R resource) {
+			repository.update(key, resource);
+			keep(key, resource);
+		}
+	}
+}
@@ -0,0 +1,210 @@
+package fr.vergne.condominium.core.repository;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import fr.vergne.condominium.core.util.Serializer;
+
+/**
+ * A {@link FileKeyIndex} tells the key of the resource stored in a file, so the
+ * key can be known without reading the file. The index is persisted in a
+ * journal file, where each line either adds or removes the key of a file:
+ *
+ * <pre>
+ * +	relative/path	serialized key
+ * -	relative/path
+ * </pre>
+ *
+ * Paths are stored relatively to the directory of the journal, so the whole
+ * directory can be moved. The journal is loaded on the first request, and
+ * rewritten at that time if it contains too many obsolete lines.
+ * <p>
+ * The journal is not kept open: each modification opens it, appends its line
+ * and closes it, unless it is done during a {@link Batch}, in which case the
+ * lines are appended at once when the {@link Batch} is closed.
+ */
+abstract class FileKeyIndex<K> {
+
+	abstract Optional<K> get(Path path);
+
+	abstract void put(Path path, K key);
+
+	abstract void remove(Path path);
+
+	/**
+	 * Start a {@link Batch} of modifications, which are appended to the journal
+	 * only once the {@link Batch} is closed.
+	 */
+	abstract Batch batch();
+
+	interface Batch extends AutoCloseable {
+		@Override
+		void close();
+	}
+
+	/**
+	 * @return a {@link FileKeyIndex} which knows no key, so they are always
+	 *         retrieved from the resources
+	 */
+	static <K> FileKeyIndex<K> none() {
+		return new FileKeyIndex<K>() {
+
+			@Override
+			Optional<K> get(Path path) {
+				return Optional.empty();
+			}
+
+			@Override
+			void put(Path path, K key) {
+				// Nothing to store
+			}
+
+			@Override
+			void remove(Path path) {
+				// Nothing to remove
+			}
+
+			@Override
+			Batch batch() {
+				return () -> {
+					// Nothing to append
+				};
+			}
+		};
+	}
+
+	static <K> FileKeyIndex<K> persistedIn(Path journalPath, Serializer<K, String> keySerializer) {
+		Path baseDirectory = journalPath.toAbsolutePath().getParent();
+		return new FileKeyIndex<K>() {
+			private Map<String, K> keys = null;
+			// Lines waiting for the Batches to be closed
+			private final StringBuilder pendingLines = new StringBuilder();
+			private int batchesCount = 0;
+
+			private String relative(Path path) {
+				return baseDirectory.relativize(path.toAbsolutePath()).toString();
+			}
+
+			private Map<String, K> keys() {
+				if (keys == null) {
+					keys = load();
+				}
+				return keys;
+			}
+
+			private Map<String, K> load() {
+				Map<String, K> loadedKeys = new HashMap<>();
+				if (!Files.exists(journalPath)) {
+					return loadedKeys;
+				}
+				List<String> lines;
+				try {
+					lines = Files.readAllLines(journalPath, UTF_8);
+				} catch (IOException cause) {
+					throw new RuntimeException("Cannot read key index " + journalPath, cause);
+				}
+				for (String line : lines) {
+					String[] parts = line.split("\t", 3);
+					if (parts[0].equals("+") && parts.length == 3) {
+						loadedKeys.put(parts[1], keySerializer.deserialize(parts[2]));
+					} else if (parts[0].equals("-") && parts.length >= 2) {
+						loadedKeys.remove(parts[1]);
+					}
+					// Ignore incomplete lines, the key will be retrieved again
+				}
+				if (lines.size() > 2 * loadedKeys.size()) {
+					rewrite(loadedKeys);
+				}
+				return loadedKeys;
+			}
+
+			private void rewrite(Map<String, K> currentKeys) {
+				Path tempPath = journalPath.resolveSibling(journalPath.getFileName() + ".tmp");
+				try (BufferedWriter tempWriter = Files.newBufferedWriter(tempPath, UTF_8)) {
+					for (Map.Entry<String, K> entry : currentKeys.entrySet()) {
+						tempWriter.write("+\t" + entry.getKey() + "\t" + keySerializer.serialize(entry.getValue()));
+						tempWriter.newLine();
+					}
+				} catch (IOException cause) {
+					throw new RuntimeException("Cannot write key index " + tempPath, cause);
+				}
+				try {
+					Files.move(tempPath, journalPath, REPLACE_EXISTING);
+				} catch (IOException cause) {
+					throw new RuntimeException("Cannot replace key index " + journalPath, cause);
+				}
+			}
+
+			private void append(String line) {
+				pendingLines.append(line).append(System.lineSeparator());
+				if (batchesCount == 0) {
+					appendPendingLines();
+				}
+			}
+
+			private void appendPendingLines() {
+				if (pendingLines.isEmpty()) {
+					return;
+				}
+				try (BufferedWriter writer = Files.newBufferedWriter(journalPath, UTF_8, CREATE, APPEND)) {
+					writer.append(pendingLines);
+				} catch (IOException cause) {
+					throw new RuntimeException("Cannot write key index " + journalPath, cause);
+				} finally {
+					// Lines not appended are retrieved again from the resources
+					pendingLines.setLength(0);
+				}
+			}
+
+			@Override
+			synchronized Optional<K> get(Path path) {
+				return Optional.ofNullable(keys().get(relative(path)));
+			}
+
+			@Override
+			synchronized void put(Path path, K key) {
+				String relativePath = relative(path);
+				if (!key.equals(keys().put(relativePath, key))) {
+					append("+\t" + relativePath + "\t" + keySerializer.serialize(key));
+				}
+			}
+
+			@Override
+			synchronized void remove(Path path) {
+				String relativePath = relative(path);
+				if (keys().remove(relativePath) != null) {
+					append("-\t" + relativePath);
+				}
+			}
+
+			@Override
+			synchronized Batch batch() {
+				batchesCount++;
+				boolean[] isClosed = { false };
+				return () -> {
+					synchronized (this) {
+						if (isClosed[0]) {
+							return;
+						}
+						isClosed[0] = true;
+						batchesCount--;
+						if (batchesCount == 0) {
+							appendPendingLines();
+						}
+					}
+				};
+			}
+		};
+	}
+}
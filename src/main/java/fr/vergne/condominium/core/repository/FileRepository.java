@@ -1,44 +1,188 @@
 package fr.vergne.condominium.core.repository;
 
+import static java.nio.file.Files.createDirectories;
 import static java.nio.file.Files.delete;
+import static java.nio.file.Files.deleteIfExists;
 import static java.nio.file.Files.exists;
+import static java.nio.file.Files.newInputStream;
+import static java.nio.file.Files.newOutputStream;
 import static java.nio.file.Files.readAllBytes;
-import static java.nio.file.Files.write;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Optional;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-public class FileRepository<K, R> implements Repository.Updatable<K, R> {
+import fr.vergne.condominium.core.util.Serializer;
+
+public class FileRepository<K, R> implements Repository.Updatable<K, R>, Repository.Fingerprinted<K, R> {
 
 	private Function<R, K> identifier;
-	private Function<R, byte[]> resourceSerializer;
-	private Function<Supplier<byte[]>, R> resourceDeserializer;
+	private ResourceWriter<R> resourceWriter;
+	private Function<Supplier<InputStream>, R> resourceReader;
 	private Function<K, Path> pathResolver;
 	private Supplier<Stream<Path>> pathFinder;
+	private FileKeyIndex<K> keyIndex;
+	private FileKeyIndex<Fingerprint> fingerprintIndex;
+	// Directories created or found, to not check them on each write
+	private final Set<Path> knownDirectories = ConcurrentHashMap.newKeySet();
+
+	static final String FINGERPRINTS_EXTENSION = ".sha256";
+	private static final int REMOVED = -1;
+
+	// Reads are blocking, so use daemon threads which don't prevent to exit
+	private static final ExecutorService READERS = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "file-reader");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Write a resource in a file.
+	 */
+	@FunctionalInterface
+	public interface ResourceWriter<R> {
+		/**
+		 * @param resource the resource to write
+		 * @param output   the {@link OutputStream} of the file, closed afterwards
+		 */
+		void write(R resource, OutputStream output) throws IOException;
+	}
 
-	private FileRepository(Function<R, K> identifier, Function<R, byte[]> resourceSerializer,
-			Function<Supplier<byte[]>, R> resourceDeserializer, Function<K, Path> pathResolver,
-			Supplier<Stream<Path>> pathFinder) {
+	private FileRepository(Function<R, K> identifier, ResourceWriter<R> resourceWriter,
+			Function<Supplier<InputStream>, R> resourceReader, Function<K, Path> pathResolver,
+			Supplier<Stream<Path>> pathFinder, FileKeyIndex<K> keyIndex, FileKeyIndex<Fingerprint> fingerprintIndex) {
 		this.identifier = identifier;
 		this.pathFinder = pathFinder;
 		this.pathResolver = pathResolver;
-		this.resourceSerializer = resourceSerializer;
-		this.resourceDeserializer = resourceDeserializer;
+		this.resourceWriter = resourceWriter;
+		this.resourceReader = resourceReader;
+		this.keyIndex = keyIndex;
+		this.fingerprintIndex = fingerprintIndex;
 	}
 
-	// TODO Create method for inputstream instead of bytes, to avoid preloading all
-	// the data in memory
 	public static <K, R> FileRepository<K, R> overBytes(Function<R, K> identifier,
 			Function<R, byte[]> resourceSerializer, Function<Supplier<byte[]>, R> resourceDeserializer,
 			Function<K, Path> pathResolver, Supplier<Stream<Path>> pathFinder) {
-		return new FileRepository<>(identifier, resourceSerializer, resourceDeserializer, pathResolver, pathFinder);
+		return overStreams(identifier, bytesWriter(resourceSerializer), bytesReader(resourceDeserializer),
+				pathResolver, pathFinder);
+	}
+
+	/**
+	 * Same as
+	 * {@link #overBytes(Function, Function, Function, Function, Supplier)}, but
+	 * the key of each file is also stored in an index file. Listing the keys then
+	 * only reads the files which are not indexed yet, like those added by other
+	 * means than this {@link FileRepository}.
+	 * <p>
+	 * The {@link Fingerprint} of each file is also stored when it is written,
+	 * next to the index file with the {@value #FINGERPRINTS_EXTENSION} extension.
+	 * Like the keys, a file modified by other means than this
+	 * {@link FileRepository} is not fingerprinted again.
+	 * 
+	 * @param keySerializer the {@link Serializer} of the keys, which must not
+	 *                      produce line breaks
+	 * @param indexPath     the file storing the keys, created if it does not exist
+	 */
+	public static <K, R> FileRepository<K, R> overBytes(Function<R, K> identifier,
+			Function<R, byte[]> resourceSerializer, Function<Supplier<byte[]>, R> resourceDeserializer,
+			Function<K, Path> pathResolver, Supplier<Stream<Path>> pathFinder, Serializer<K, String> keySerializer,
+			Path indexPath) {
+		return overStreams(identifier, bytesWriter(resourceSerializer), bytesReader(resourceDeserializer),
+				pathResolver, pathFinder, keySerializer, indexPath);
+	}
+
+	/**
+	 * Create a {@link FileRepository} which reads and writes the files through
+	 * streams. Contrary to
+	 * {@link #overBytes(Function, Function, Function, Function, Supplier)}, the
+	 * content of a file is not loaded in memory before to deserialize it, so the
+	 * deserializer can read only the part it needs.
+	 * 
+	 * @param resourceWriter the {@link ResourceWriter} serializing a resource
+	 * @param resourceReader the deserializer of a resource, which can open as many
+	 *                       {@link InputStream}s on the file as needed, and must
+	 *                       close them
+	 */
+	public static <K, R> FileRepository<K, R> overStreams(Function<R, K> identifier,
+			ResourceWriter<R> resourceWriter, Function<Supplier<InputStream>, R> resourceReader,
+			Function<K, Path> pathResolver, Supplier<Stream<Path>> pathFinder) {
+		return new FileRepository<>(identifier, resourceWriter, resourceReader, pathResolver, pathFinder,
+				FileKeyIndex.none(), FileKeyIndex.none());
+	}
+
+	/**
+	 * Same as
+	 * {@link #overStreams(Function, ResourceWriter, Function, Function, Supplier)},
+	 * but with the key index of
+	 * {@link #overBytes(Function, Function, Function, Function, Supplier, Serializer, Path)}.
+	 */
+	public static <K, R> FileRepository<K, R> overStreams(Function<R, K> identifier,
+			ResourceWriter<R> resourceWriter, Function<Supplier<InputStream>, R> resourceReader,
+			Function<K, Path> pathResolver, Supplier<Stream<Path>> pathFinder, Serializer<K, String> keySerializer,
+			Path indexPath) {
+		Path fingerprintsPath = indexPath.resolveSibling(indexPath.getFileName() + FINGERPRINTS_EXTENSION);
+		return new FileRepository<>(identifier, resourceWriter, resourceReader, pathResolver, pathFinder,
+				FileKeyIndex.persistedIn(indexPath, keySerializer),
+				FileKeyIndex.persistedIn(fingerprintsPath, Fingerprint.serializer()));
+	}
+
+	private static <R> ResourceWriter<R> bytesWriter(Function<R, byte[]> resourceSerializer) {
+		return (resource, output) -> output.write(resourceSerializer.apply(resource));
+	}
+
+	private static <R> Function<Supplier<InputStream>, R> bytesReader(
+			Function<Supplier<byte[]>, R> resourceDeserializer) {
+		return streamSupplier -> resourceDeserializer.apply(() -> {
+			try (InputStream stream = streamSupplier.get()) {
+				return stream.readAllBytes();
+			} catch (IOException cause) {
+				throw new RuntimeException("Cannot read resource bytes", cause);
+			}
+		});
 	}
 
 	@Override
@@ -48,11 +192,8 @@ public class FileRepository<K, R> implements Repository.Updatable<K, R> {
 		if (exists(path)) {
 			throw new AlredyExistingResourceKeyException(key);
 		}
-		try {
-			write(path, resourceSerializer.apply(resource));
-		} catch (IOException cause) {
-			throw new CannotWriteFileException(key, path, cause);
-		}
+		write(key, path, resource);
+		keyIndex.put(path, key);
 		return key;
 	}
 
@@ -66,11 +207,7 @@ public class FileRepository<K, R> implements Repository.Updatable<K, R> {
 		if (!Objects.equals(key, newKey)) {
 			throw new IllegalArgumentException("Povided key " + key + " does not match resource key " + newKey);
 		}
-		try {
-			write(path, resourceSerializer.apply(resource));
-		} catch (IOException cause) {
-			throw new CannotWriteFileException(key, path, cause);
-		}
+		write(key, path, resource);
 	}
 
 	@Override
@@ -96,9 +233,9 @@ public class FileRepository<K, R> implements Repository.Updatable<K, R> {
 		if (!exists(path)) {
 			return Optional.empty();
 		}
-		R resource = resourceDeserializer.apply(() -> {
+		R resource = resourceReader.apply(() -> {
 			try {
-				return readAllBytes(path);
+				return newInputStream(path);
 			} catch (IOException cause) {
 				throw new CannotReadFileException(key, path, cause);
 			}
@@ -118,41 +255,631 @@ public class FileRepository<K, R> implements Repository.Updatable<K, R> {
 		} catch (IOException cause) {
 			throw new CannotReadFileException(key, path, cause);
 		}
-		R resource = resourceDeserializer.apply(() -> bytes);
+		// The file is deleted, so provide the bytes read before
+		R resource = resourceReader.apply(() -> new ByteArrayInputStream(bytes));
 		try {
 			delete(path);
 		} catch (IOException cause) {
 			throw new CannotDeleteFileException(key, path, cause);
 		}
+		keyIndex.remove(path);
+		fingerprintIndex.remove(path);
 		return Optional.of(resource);
 	}
 
+	/**
+	 * Provide the {@link Fingerprint} of the file storing a resource. If it is not
+	 * stored yet, it is computed from the file without deserializing the
+	 * resource.
+	 */
 	@Override
-	public Stream<R> streamResources() {
-		return pathFinder.get().map(path -> {
-			return resourceDeserializer.apply(() -> {
-				try {
-					return readAllBytes(path);
-				} catch (IOException cause) {
-					throw new CannotReadFileException(path, cause);
-				}
-			});
+	public Fingerprint fingerprint(K key) throws UnknownResourceKeyException {
+		Path path = pathResolver.apply(key);
+		if (!exists(path)) {
+			throw new UnknownResourceKeyException(key);
+		}
+		return fingerprintIndex.get(path).orElseGet(() -> {
+			Fingerprint fingerprint;
+			try (InputStream stream = newInputStream(path)) {
+				fingerprint = Fingerprint.of(stream);
+			} catch (IOException cause) {
+				throw new CannotReadFileException(key, path, cause);
+			}
+			fingerprintIndex.put(path, fingerprint);
+			return fingerprint;
 		});
 	}
 
+	@Override
+	public Stream<R> streamResources() {
+		return pathFinder.get().map(this::deserialize);
+	}
+
 	@Override
 	public Stream<K> streamKeys() {
-		return streamResources().map(identifier);
+		return pathFinder.get().map(this::keyOf);
 	}
 
 	@Override
 	public Stream<Entry<K, R>> stream() {
-		return streamResources().map(resource -> {
-			K key = identifier.apply(resource);
+		return pathFinder.get().map(path -> {
+			R resource = deserialize(path);
+			K key = keyIndex.get(path).orElseGet(() -> indexKey(path, resource));
 			return Map.entry(key, resource);
 		});
 	}
 
+	/**
+	 * Open a {@link Repository.Session} which stages the modifications of the
+	 * resources until they are committed. The staged resources are serialized in
+	 * a journal as soon as they are staged, so only their locations are retained
+	 * in memory. At commit time, the journal is synced once to the disk, and only
+	 * then the files are modified. If a commit is interrupted while modifying the
+	 * files, the modifications are replayed from the journal by
+	 * {@link #recover(Path)}. If it is interrupted before the journal is synced,
+	 * none of the modifications is applied.
+	 * <p>
+	 * The journal is the only modification synced at commit time. It is thus
+	 * retained until the next commit or the next {@link #recover(Path)}, which
+	 * sync the modified files before to delete it.
+	 * <p>
+	 * The staged resources are visible through the {@link Repository} of the
+	 * {@link Repository.Session}, but not through this {@link FileRepository}
+	 * until they are committed. A {@link Repository.Session} is not thread-safe,
+	 * and a single one can be opened at a time on a given journal.
+	 * 
+	 * @param journalPath the file storing the modifications being committed
+	 * @return a new {@link Repository.Session}
+	 */
+	public Repository.Session<K, R> openSession(Path journalPath) {
+		recover(journalPath);
+		return new JournaledSession(journalPath);
+	}
+
+	/**
+	 * Replay the modifications of the last commit, which might have been
+	 * interrupted, then delete its journal. Only the files which differ from the
+	 * journal are written again, and the keys of those files are indexed again
+	 * when requested.
+	 * <p>
+	 * Call it when creating the {@link FileRepository}, so even a repository only
+	 * read never sees the files of a commit partially applied.
+	 * 
+	 * @param journalPath the journal of the {@link Repository.Session}s
+	 */
+	public void recover(Path journalPath) {
+		try {
+			// An incomplete journal means the modifications were not applied at all
+			deleteIfExists(journalTempPath(journalPath));
+		} catch (IOException cause) {
+			throw new RuntimeException("Cannot delete incomplete journal " + journalPath, cause);
+		}
+		retireJournal(journalPath);
+	}
+
+	/**
+	 * Ensure the modifications of the journal are applied and synced to the disk,
+	 * then delete it.
+	 */
+	private void retireJournal(Path journalPath) {
+		if (!exists(journalPath)) {
+			return;
+		}
+		Path baseDirectory = journalPath.toAbsolutePath().getParent();
+		try {
+			Set<Path> modifiedFiles = new LinkedHashSet<>();
+			Set<Path> modifiedDirectories = new LinkedHashSet<>();
+			try (DataInputStream input = new DataInputStream(new BufferedInputStream(newInputStream(journalPath)));
+					FileKeyIndex.Batch keyBatch = keyIndex.batch();
+					FileKeyIndex.Batch fingerprintBatch = fingerprintIndex.batch()) {
+				while (input.available() > 0) {
+					Path path = baseDirectory.resolve(input.readUTF());
+					int length = input.readInt();
+					if (length == REMOVED) {
+						deleteIfExists(path);
+						keyIndex.remove(path);
+						fingerprintIndex.remove(path);
+						modifiedFiles.remove(path);
+					} else {
+						byte[] bytes = input.readNBytes(length);
+						// Files already applied are not written again
+						if (!exists(path) || !Arrays.equals(readAllBytes(path), bytes)) {
+							createParentDirectory(path);
+							Files.write(path, bytes);
+							keyIndex.remove(path);
+						}
+						fingerprintIndex.put(path, Fingerprint.of(bytes));
+						modifiedFiles.add(path);
+					}
+					modifiedDirectories.add(path.toAbsolutePath().getParent());
+				}
+			}
+			// The journal is the only copy of the modifications until they are synced
+			for (Path path : modifiedFiles) {
+				syncFile(path);
+			}
+			for (Path directory : modifiedDirectories) {
+				syncDirectory(directory);
+			}
+			delete(journalPath);
+		} catch (IOException cause) {
+			throw new RuntimeException("Cannot recover journal " + journalPath, cause);
+		}
+	}
+
+	/**
+	 * Sync the file to the disk, so it survives a crash.
+	 */
+	private static void syncFile(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, WRITE)) {
+			channel.force(true);
+		}
+	}
+
+	/**
+	 * Sync the directory to the disk, so the files created, moved or deleted in it
+	 * survive a crash.
+	 */
+	private static void syncDirectory(Path directory) throws IOException {
+		try (FileChannel channel = FileChannel.open(directory, READ)) {
+			channel.force(true);
+		} catch (AccessDeniedException cause) {
+			// Some platforms, like Windows, cannot open directories, nor need to sync them
+		}
+	}
+
+	private static Path journalTempPath(Path journalPath) {
+		return journalPath.resolveSibling(journalPath.getFileName() + ".tmp");
+	}
+
+	/**
+	 * Stage the modifications in a journal, each as a record:
+	 * 
+	 * <pre>
+	 * UTF relativePath | int length (-1 if removed) | byte[] data
+	 * </pre>
+	 * 
+	 * The journal is written aside, then synced and moved atomically at commit
+	 * time, so it exists only once complete. A resource staged several times has
+	 * several records, the last one being applied last.
+	 */
+	private class JournaledSession implements Repository.Session<K, R> {
+
+		private final Path journalPath;
+		private final Path tempPath;
+		private final Path baseDirectory;
+		// Only the location of the last record of each resource is retained
+		private final Map<K, Staged> staged = new LinkedHashMap<>();
+		private FileChannel journalChannel = null;
+		private OutputStream journalOutput = null;
+		private long journalSize = 0;
+
+		JournaledSession(Path journalPath) {
+			this.journalPath = journalPath;
+			this.tempPath = journalTempPath(journalPath);
+			this.baseDirectory = journalPath.toAbsolutePath().getParent();
+		}
+
+		@Override
+		public Repository<K, R> repository() {
+			return new Repository.Updatable<K, R>() {
+
+				@Override
+				public K add(R resource) throws AlredyExistingResourceKeyException {
+					K key = identifier.apply(resource);
+					if (has(key)) {
+						throw new AlredyExistingResourceKeyException(key);
+					}
+					stage(key, resource);
+					return key;
+				}
+
+				@Override
+				public void update(K key, R resource) {
+					if (!has(key)) {
+						throw new UnknownResourceKeyException(key);
+					}
+					K newKey = identifier.apply(resource);
+					if (!Objects.equals(key, newKey)) {
+						throw new IllegalArgumentException(
+								"Povided key " + key + " does not match resource key " + newKey);
+					}
+					stage(key, resource);
+				}
+
+				@Override
+				public Optional<K> key(R resource) {
+					K key = identifier.apply(resource);
+					return has(key) ? Optional.of(key) : Optional.empty();
+				}
+
+				@Override
+				public boolean has(K key) {
+					Staged stagedResource = staged.get(key);
+					if (stagedResource == null) {
+						return FileRepository.this.has(key);
+					}
+					return !stagedResource.isRemoved();
+				}
+
+				@Override
+				public Optional<R> get(K key) {
+					Staged stagedResource = staged.get(key);
+					if (stagedResource == null) {
+						return FileRepository.this.get(key);
+					}
+					return stagedResource.isRemoved() ? Optional.empty() : Optional.of(readStaged(key, stagedResource));
+				}
+
+				@Override
+				public Optional<R> remove(K key) {
+					Optional<R> resource = get(key);
+					if (resource.isPresent()) {
+						stage(key, null);
+					}
+					return resource;
+				}
+
+				@Override
+				public Stream<Entry<K, R>> stream() {
+					Stream<Entry<K, R>> storedEntries = FileRepository.this.stream()//
+							.filter(entry -> !staged.containsKey(entry.getKey()));
+					Stream<Entry<K, R>> stagedEntries = staged.entrySet().stream()//
+							.filter(entry -> !entry.getValue().isRemoved())//
+							.map(entry -> Map.entry(entry.getKey(), readStaged(entry.getKey(), entry.getValue())));
+					return Stream.concat(storedEntries, stagedEntries);
+				}
+			};
+		}
+
+		/**
+		 * Append the record of a resource to the journal.
+		 * 
+		 * @param resource the resource to stage, <code>null</code> to remove it
+		 */
+		private void stage(K key, R resource) {
+			Path path = pathResolver.apply(key);
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			if (resource != null) {
+				try {
+					resourceWriter.write(resource, bytes);
+				} catch (IOException cause) {
+					throw new RuntimeException("Cannot serialize " + key, cause);
+				}
+			}
+			int length = resource == null ? REMOVED : bytes.size();
+			ByteArrayOutputStream header = new ByteArrayOutputStream();
+			try {
+				DataOutputStream headerOutput = new DataOutputStream(header);
+				headerOutput.writeUTF(baseDirectory.relativize(path.toAbsolutePath()).toString());
+				headerOutput.writeInt(length);
+				if (journalOutput == null) {
+					journalChannel = FileChannel.open(tempPath, CREATE, TRUNCATE_EXISTING, READ, WRITE);
+					journalOutput = new BufferedOutputStream(Channels.newOutputStream(journalChannel));
+				}
+				header.writeTo(journalOutput);
+				bytes.writeTo(journalOutput);
+			} catch (IOException cause) {
+				throw new RuntimeException("Cannot write journal " + tempPath, cause);
+			}
+			long offset = journalSize + header.size();
+			journalSize = offset + Math.max(length, 0);
+			staged.put(key, new Staged(path, offset, length));
+		}
+
+		private R readStaged(K key, Staged stagedResource) {
+			byte[] bytes;
+			try {
+				journalOutput.flush();
+				bytes = readRecord(journalChannel, stagedResource);
+			} catch (IOException cause) {
+				throw new CannotReadFileException(key, tempPath, cause);
+			}
+			return resourceReader.apply(() -> new ByteArrayInputStream(bytes));
+		}
+
+		@Override
+		public void commit() {
+			if (staged.isEmpty()) {
+				return;
+			}
+			// Retire the journal of the previous commit before to replace it
+			retireJournal(journalPath);
+			try {
+				journalOutput.flush();
+				journalChannel.force(true);
+				closeJournal();
+				Files.move(tempPath, journalPath, ATOMIC_MOVE);
+				// Sync the move, otherwise the journal might not exist after a crash
+				syncDirectory(journalPath.toAbsolutePath().getParent());
+			} catch (IOException cause) {
+				throw new RuntimeException("Cannot write journal " + journalPath, cause);
+			}
+			// The files are synced when the journal is retired
+			try (FileChannel journal = FileChannel.open(journalPath, READ);
+					FileKeyIndex.Batch keyBatch = keyIndex.batch();
+					FileKeyIndex.Batch fingerprintBatch = fingerprintIndex.batch()) {
+				for (Entry<K, Staged> entry : staged.entrySet()) {
+					apply(entry.getKey(), entry.getValue(), journal);
+				}
+			} catch (IOException cause) {
+				throw new RuntimeException("Cannot read journal " + journalPath, cause);
+			} finally {
+				// Even if interrupted, the modifications are in the journal now
+				staged.clear();
+			}
+		}
+
+		private void apply(K key, Staged stagedResource, FileChannel journal) throws IOException {
+			Path path = stagedResource.path();
+			if (stagedResource.isRemoved()) {
+				try {
+					deleteIfExists(path);
+				} catch (IOException cause) {
+					throw new CannotDeleteFileException(key, path, cause);
+				}
+				keyIndex.remove(path);
+				fingerprintIndex.remove(path);
+			} else {
+				byte[] bytes = readRecord(journal, stagedResource);
+				try {
+					createParentDirectory(path);
+					Files.write(path, bytes);
+				} catch (IOException cause) {
+					throw new CannotWriteFileException(key, path, cause);
+				}
+				keyIndex.put(path, key);
+				fingerprintIndex.put(path, Fingerprint.of(bytes));
+			}
+		}
+
+		private void closeJournal() throws IOException {
+			if (journalChannel != null) {
+				journalChannel.close();
+				journalChannel = null;
+				journalOutput = null;
+				journalSize = 0;
+			}
+		}
+
+		@Override
+		public void rollback() {
+			staged.clear();
+			try {
+				closeJournal();
+				deleteIfExists(tempPath);
+			} catch (IOException cause) {
+				throw new RuntimeException("Cannot delete journal " + tempPath, cause);
+			}
+		}
+	}
+
+	private static byte[] readRecord(FileChannel journal, Staged stagedResource) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(stagedResource.length());
+		long position = stagedResource.offset();
+		while (buffer.hasRemaining()) {
+			int count = journal.read(buffer, position);
+			if (count < 0) {
+				throw new EOFException("Incomplete record at " + stagedResource.offset());
+			}
+			position += count;
+		}
+		return buffer.array();
+	}
+
+	/**
+	 * The location of the record of a staged resource in the journal.
+	 */
+	private record Staged(Path path, long offset, int length) {
+		boolean isRemoved() {
+			return length == REMOVED;
+		}
+	}
+
+	/**
+	 * Same as {@link #streamResources()}, but the files are read in advance on
+	 * background threads, so the latency of each read is hidden behind the
+	 * processing of the previous resources. The order of the files is preserved.
+	 * <p>
+	 * The bytes read in advance are provided once to the given deserializer, which
+	 * must consume them right away to release them. If it reads the resource
+	 * again later, it reads it from the file. Close the stream to cancel the
+	 * pending reads if it is not fully consumed.
+	 * 
+	 * @param readAhead      the maximum number of files read in advance
+	 * @param resourceReader the deserializer of a resource, which reads the
+	 *                       provided {@link InputStream} before to return
+	 */
+	public Stream<R> streamResourcesWithReadAhead(int readAhead, Function<Supplier<InputStream>, R> resourceReader) {
+		Stream<Path> paths = pathFinder.get();
+		Iterator<Path> pathIterator = paths.iterator();
+		Deque<Entry<Path, Future<byte[]>>> pendingReads = new ArrayDeque<>();
+		Iterator<R> resourceIterator = new Iterator<R>() {
+
+			private void readAhead() {
+				while (pendingReads.size() < readAhead && pathIterator.hasNext()) {
+					Path path = pathIterator.next();
+					pendingReads.add(Map.entry(path, READERS.submit(() -> read(path))));
+				}
+			}
+
+			@Override
+			public boolean hasNext() {
+				readAhead();
+				return !pendingReads.isEmpty();
+			}
+
+			@Override
+			public R next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				Entry<Path, Future<byte[]>> pendingRead = pendingReads.poll();
+				byte[] bytes = await(pendingRead.getKey(), pendingRead.getValue());
+				readAhead();
+				return deserialize(pendingRead.getKey(), bytes, resourceReader);
+			}
+		};
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(resourceIterator, //
+				Spliterator.ORDERED | Spliterator.NONNULL), false)//
+				.onClose(() -> {
+					// Don't let reads run if the stream stops early
+					pendingReads.forEach(pendingRead -> pendingRead.getValue().cancel(true));
+					pendingReads.clear();
+					paths.close();
+				});
+	}
+
+	/**
+	 * Same as {@link #streamResources()}, but several files are read at the same
+	 * time on background threads, and the resources are provided as soon as they
+	 * are read. Use it when the order of the resources does not matter, like for
+	 * aggregations. Like
+	 * {@link #streamResourcesWithReadAhead(int, Function)}, the deserializer must
+	 * consume the bytes right away.
+	 * 
+	 * @param parallelism    the maximum number of files read at the same time
+	 * @param resourceReader the deserializer of a resource, which reads the
+	 *                       provided {@link InputStream} before to return
+	 */
+	public Stream<R> streamResourcesUnordered(int parallelism, Function<Supplier<InputStream>, R> resourceReader) {
+		Stream<Path> paths = pathFinder.get();
+		Iterator<Path> pathIterator = paths.iterator();
+		CompletionService<Entry<Path, byte[]>> reads = new ExecutorCompletionService<>(READERS);
+		Set<Future<Entry<Path, byte[]>>> pendingReads = new HashSet<>();
+		Iterator<R> resourceIterator = new Iterator<R>() {
+
+			private void readAhead() {
+				while (pendingReads.size() < parallelism && pathIterator.hasNext()) {
+					Path path = pathIterator.next();
+					pendingReads.add(reads.submit(() -> Map.entry(path, read(path))));
+				}
+			}
+
+			@Override
+			public boolean hasNext() {
+				readAhead();
+				return !pendingReads.isEmpty();
+			}
+
+			@Override
+			public R next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				Future<Entry<Path, byte[]>> completedRead;
+				try {
+					completedRead = reads.take();
+				} catch (InterruptedException cause) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException("Interrupted while reading files", cause);
+				}
+				pendingReads.remove(completedRead);
+				Entry<Path, byte[]> read = await(null, completedRead);
+				readAhead();
+				return deserialize(read.getKey(), read.getValue(), resourceReader);
+			}
+		};
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(resourceIterator, //
+				Spliterator.NONNULL), false)//
+				.onClose(() -> {
+					// Don't let reads run if the stream stops early
+					pendingReads.forEach(pendingRead -> pendingRead.cancel(true));
+					pendingReads.clear();
+					paths.close();
+				});
+	}
+
+	private static <T> T await(Path path, Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException cause) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while reading " + path, cause);
+		} catch (ExecutionException cause) {
+			if (cause.getCause() instanceof RuntimeException runtimeCause) {
+				throw runtimeCause;
+			}
+			throw new RuntimeException("Cannot read " + path, cause.getCause());
+		}
+	}
+
+	/**
+	 * Deserialize bytes already read. The bytes are released once provided, and
+	 * read again from the file if requested again, so they are not retained as
+	 * long as the resource.
+	 */
+	private static <R> R deserialize(Path path, byte[] bytes, Function<Supplier<InputStream>, R> resourceReader) {
+		var readBytes = new Object() {
+			byte[] value = bytes;
+		};
+		return resourceReader.apply(() -> {
+			byte[] value = readBytes.value;
+			if (value == null) {
+				return open(path);
+			}
+			readBytes.value = null;
+			return new ByteArrayInputStream(value);
+		});
+	}
+
+	private static byte[] read(Path path) {
+		try {
+			return readAllBytes(path);
+		} catch (IOException cause) {
+			throw new CannotReadFileException(path, cause);
+		}
+	}
+
+	private static InputStream open(Path path) {
+		try {
+			return newInputStream(path);
+		} catch (IOException cause) {
+			throw new CannotReadFileException(path, cause);
+		}
+	}
+
+	private R deserialize(Path path) {
+		return resourceReader.apply(() -> open(path));
+	}
+
+	private void write(K key, Path path, R resource) {
+		Fingerprint fingerprint;
+		try {
+			createParentDirectory(path);
+		} catch (IOException cause) {
+			throw new CannotWriteFileException(key, path, cause);
+		}
+		try (Fingerprint.Writer output = new Fingerprint.Writer(new BufferedOutputStream(newOutputStream(path)))) {
+			resourceWriter.write(resource, output);
+			fingerprint = output.fingerprint();
+		} catch (IOException cause) {
+			throw new CannotWriteFileException(key, path, cause);
+		}
+		fingerprintIndex.put(path, fingerprint);
+	}
+
+	/**
+	 * Create the directory of a file, unless it is already known.
+	 */
+	private void createParentDirectory(Path path) throws IOException {
+		Path directory = path.getParent();
+		if (directory != null && !knownDirectories.contains(directory)) {
+			createDirectories(directory);
+			knownDirectories.add(directory);
+		}
+	}
+
+	private K keyOf(Path path) {
+		return keyIndex.get(path).orElseGet(() -> indexKey(path, deserialize(path)));
+	}
+
+	private K indexKey(Path path, R resource) {
+		K key = identifier.apply(resource);
+		keyIndex.put(path, key);
+		return key;
+	}
+
 	@SuppressWarnings("serial")
 	public static class CannotWriteFileException extends RuntimeException {
 
@@ -0,0 +1,104 @@
+package fr.vergne.condominium.core.repository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+import fr.vergne.condominium.core.util.Serializer;
+
+/**
+ * A {@link Fingerprint} is the SHA-256 digest of the serialized content of a
+ * resource. Two resources with the same {@link Fingerprint} are considered
+ * equal, so comparing their {@link Fingerprint}s avoids to compare the
+ * resources themselves.
+ */
+public final class Fingerprint {
+
+	private static final String ALGORITHM = "SHA-256";
+	private static final HexFormat HEX = HexFormat.of();
+
+	private final byte[] digest;
+
+	private Fingerprint(byte[] digest) {
+		this.digest = digest;
+	}
+
+	public static Fingerprint of(byte[] content) {
+		return new Fingerprint(createDigest().digest(content));
+	}
+
+	public static Fingerprint of(InputStream content) throws IOException {
+		MessageDigest digest = createDigest();
+		byte[] buffer = new byte[8192];
+		int length;
+		while ((length = content.read(buffer)) != -1) {
+			digest.update(buffer, 0, length);
+		}
+		return new Fingerprint(digest.digest());
+	}
+
+	/**
+	 * Compute a {@link Fingerprint} while writing the content.
+	 */
+	static class Writer extends DigestOutputStream {
+
+		Writer(OutputStream output) {
+			super(output, createDigest());
+		}
+
+		/**
+		 * @return the {@link Fingerprint} of the bytes written so far
+		 */
+		Fingerprint fingerprint() {
+			return new Fingerprint(getMessageDigest().digest());
+		}
+	}
+
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance(ALGORITHM);
+		} catch (NoSuchAlgorithmException cause) {
+			throw new RuntimeException("Cannot compute " + ALGORITHM + " digests", cause);
+		}
+	}
+
+	/**
+	 * @return a {@link Serializer} storing a {@link Fingerprint} as an hexadecimal
+	 *         {@link String}
+	 */
+	public static Serializer<Fingerprint, String> serializer() {
+		return new Serializer<>() {
+
+			@Override
+			public String serialize(Fingerprint fingerprint) {
+				return fingerprint.toString();
+			}
+
+			@Override
+			public Fingerprint deserialize(String serial) {
+				return new Fingerprint(HEX.parseHex(serial));
+			}
+		};
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof Fingerprint that //
+				&& Arrays.equals(this.digest, that.digest);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(digest);
+	}
+
+	@Override
+	public String toString() {
+		return HEX.formatHex(digest);
+	}
+}
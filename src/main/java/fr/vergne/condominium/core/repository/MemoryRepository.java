@@ -1,22 +1,62 @@
 package fr.vergne.condominium.core.repository;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
 import java.util.Map.Entry;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
+/**
+ * A {@link Repository} storing its resources in a {@link Map}. The keys of the
+ * resources are also indexed by resource at the first call of
+ * {@link #key(Object)}, so it does not need to browse all the resources on the
+ * next calls. Until then, resources are stored without computing their
+ * {@link Object#hashCode()}. Once indexed, the resources must not change their
+ * {@link Object#hashCode()} while they are stored.
+ */
 public class MemoryRepository<K, R> implements Repository<K, R> {
 
 	private final Function<R, K> identifier;
 	private final Map<K, R> resources;
+	// Equal resources may be stored under several keys, the first one is returned
+	private Map<R, List<K>> keys = null;
 
 	public MemoryRepository(Function<R, K> identifier, Map<K, R> resources) {
 		this.identifier = identifier;
 		this.resources = resources;
 	}
 
+	private Map<R, List<K>> keys() {
+		if (keys == null) {
+			keys = new HashMap<>();
+			resources.forEach(this::index);
+		}
+		return keys;
+	}
+
+	private void index(K key, R resource) {
+		if (keys == null) {
+			// Not indexed yet, so will be when requested
+			return;
+		}
+		keys.computeIfAbsent(resource, r -> new ArrayList<>(1)).add(key);
+	}
+
+	private void unindex(K key, R resource) {
+		if (keys == null) {
+			// Not indexed yet, so nothing to remove
+			return;
+		}
+		List<K> resourceKeys = keys.get(resource);
+		resourceKeys.remove(key);
+		if (resourceKeys.isEmpty()) {
+			keys.remove(resource);
+		}
+	}
+
 	@Override
 	public K add(R resource) throws AlredyExistingResourceKeyException {
 		K key = identifier.apply(resource);
@@ -24,16 +64,19 @@ public class MemoryRepository<K, R> implements Repository<K, R> {
 		if (previousResources != null) {
 			throw new AlredyExistingResourceKeyException(key);
 		} else {
+			index(key, resource);
 			return key;
 		}
 	}
 
 	@Override
 	public Optional<K> key(R resource) {
-		return resources.entrySet().stream()//
-				.filter(entry -> Objects.equals(entry.getValue(), resource))//
-				.map(Map.Entry::getKey)//
-				.findFirst();
+		List<K> resourceKeys = keys().get(resource);
+		if (resourceKeys == null) {
+			return Optional.empty();
+		} else {
+			return Optional.of(resourceKeys.get(0));
+		}
 	}
 
 	@Override
@@ -44,7 +87,7 @@ public class MemoryRepository<K, R> implements Repository<K, R> {
 	@Override
 	public Optional<R> get(K key) {
 		R resource = resources.get(key);
-		if (resources == null) {
+		if (resource == null) {
 			return Optional.empty();
 		} else {
 			return Optional.of(resource);
@@ -54,9 +97,10 @@ public class MemoryRepository<K, R> implements Repository<K, R> {
 	@Override
 	public Optional<R> remove(K key) {
 		R resource = resources.remove(key);
-		if (resources == null) {
+		if (resource == null) {
 			return Optional.empty();
 		} else {
+			unindex(key, resource);
 			return Optional.of(resource);
 		}
 	}
@@ -0,0 +1,157 @@
+package fr.vergne.condominium.core.repository;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+import fr.vergne.condominium.core.repository.RepositoryDiff.ResourceDiff;
+
+/**
+ * Compute the {@link ResourceDiff}s between two sequences of entries sorted by
+ * key, by browsing them together once. The entries having the same key in both
+ * sequences are compared immediately. The other ones are kept aside, grouped by
+ * content hash, until both sequences are consumed. Only then they are matched
+ * to find the resources which changed their key, the remaining ones being
+ * removals or additions.
+ * <p>
+ * If the content hash is strong enough, like a {@link Fingerprint}, resources
+ * with the same hash are considered equal without comparing them.
+ */
+class MergeJoinDiffIterator<K, R> implements Iterator<ResourceDiff<K, R>> {
+
+	private final Iterator<Entry<K, R>> entries1;
+	private final Iterator<Entry<K, R>> entries2;
+	private final Comparator<? super K> keyOrder;
+	private final Function<Entry<K, R>, ?> contentHash1;
+	private final Function<Entry<K, R>, ?> contentHash2;
+	private final boolean isHashEnough;
+
+	private Entry<K, R> entry1;
+	private Entry<K, R> entry2;
+	private final Map<Object, List<Entry<K, R>>> only1 = new LinkedHashMap<>();
+	private final Map<Object, List<Entry<K, R>>> only2 = new LinkedHashMap<>();
+	private final Deque<ResourceDiff<K, R>> diffs = new ArrayDeque<>();
+	private boolean isFinished = false;
+
+	MergeJoinDiffIterator(Iterator<Entry<K, R>> entries1, Iterator<Entry<K, R>> entries2,
+			Comparator<? super K> keyOrder, Function<Entry<K, R>, ?> contentHash1,
+			Function<Entry<K, R>, ?> contentHash2, boolean isHashEnough) {
+		this.entries1 = entries1;
+		this.entries2 = entries2;
+		this.keyOrder = keyOrder;
+		this.contentHash1 = contentHash1;
+		this.contentHash2 = contentHash2;
+		this.isHashEnough = isHashEnough;
+		this.entry1 = next(entries1, null);
+		this.entry2 = next(entries2, null);
+	}
+
+	private Entry<K, R> next(Iterator<Entry<K, R>> entries, Entry<K, R> previous) {
+		if (!entries.hasNext()) {
+			return null;
+		}
+		Entry<K, R> next = entries.next();
+		if (previous != null && keyOrder.compare(previous.getKey(), next.getKey()) >= 0) {
+			throw new IllegalStateException("Keys not in order: " + previous.getKey() + " then " + next.getKey());
+		}
+		return next;
+	}
+
+	@Override
+	public boolean hasNext() {
+		while (diffs.isEmpty() && !isFinished) {
+			step();
+		}
+		return !diffs.isEmpty();
+	}
+
+	@Override
+	public ResourceDiff<K, R> next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return diffs.poll();
+	}
+
+	private void step() {
+		int comparison;
+		if (entry1 != null && entry2 != null) {
+			comparison = keyOrder.compare(entry1.getKey(), entry2.getKey());
+		} else if (entry1 != null) {
+			comparison = -1;
+		} else if (entry2 != null) {
+			comparison = 1;
+		} else {
+			finish();
+			return;
+		}
+
+		if (comparison == 0) {
+			if (!haveSameContent(entry1, entry2)) {
+				diffs.add(ResourceDiff.replaceResource(entry1.getKey(), entry1.getValue(), entry2.getValue()));
+			}
+			entry1 = next(entries1, entry1);
+			entry2 = next(entries2, entry2);
+		} else if (comparison < 0) {
+			keepAside(only1, contentHash1, entry1);
+			entry1 = next(entries1, entry1);
+		} else {
+			keepAside(only2, contentHash2, entry2);
+			entry2 = next(entries2, entry2);
+		}
+	}
+
+	private boolean haveSameContent(Entry<K, R> entry1, Entry<K, R> entry2) {
+		if (isHashEnough) {
+			return contentHash1.apply(entry1).equals(contentHash2.apply(entry2));
+		} else {
+			return entry1.getValue().equals(entry2.getValue());
+		}
+	}
+
+	private void keepAside(Map<Object, List<Entry<K, R>>> entries, Function<Entry<K, R>, ?> contentHash,
+			Entry<K, R> entry) {
+		entries.computeIfAbsent(contentHash.apply(entry), hash -> new LinkedList<>()).add(entry);
+	}
+
+	private void finish() {
+		for (Entry<Object, List<Entry<K, R>>> hashEntries1 : only1.entrySet()) {
+			List<Entry<K, R>> candidates = only2.getOrDefault(hashEntries1.getKey(), List.of());
+			for (Entry<K, R> removed : hashEntries1.getValue()) {
+				Entry<K, R> added = pollEqual(candidates, removed.getValue());
+				if (added == null) {
+					diffs.add(ResourceDiff.remove(removed.getKey(), removed.getValue()));
+				} else {
+					diffs.add(ResourceDiff.replaceKey(removed.getKey(), added.getKey(), removed.getValue()));
+				}
+			}
+		}
+		List<Entry<K, R>> additions = new ArrayList<>();
+		only2.values().forEach(additions::addAll);
+		additions.forEach(added -> diffs.add(ResourceDiff.add(added.getKey(), added.getValue())));
+		only1.clear();
+		only2.clear();
+		isFinished = true;
+	}
+
+	private Entry<K, R> pollEqual(List<Entry<K, R>> candidates, R resource) {
+		for (Iterator<Entry<K, R>> iterator = candidates.iterator(); iterator.hasNext();) {
+			Entry<K, R> candidate = iterator.next();
+			// Same hash does not mean same content, unless the hash is strong enough
+			if (isHashEnough || candidate.getValue().equals(resource)) {
+				iterator.remove();
+				return candidate;
+			}
+		}
+		return null;
+	}
+}
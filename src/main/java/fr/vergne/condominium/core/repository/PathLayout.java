@@ -0,0 +1,104 @@
+package fr.vergne.condominium.core.repository;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.HexFormat;
+import java.util.function.Function;
+
+/**
+ * A {@link PathLayout} tells where the file of each key is stored, relatively to
+ * the root directory of a {@link FileRepository}. The file is stored in a shard,
+ * which is a sequence of directories separated by <code>/</code>, to not have
+ * too many files in a single directory.
+ * <p>
+ * Resolving a path only computes it, no directory is created. It is thus cheap
+ * to do for reading. {@link FileRepository} creates the directories when
+ * writing the files.
+ */
+public class PathLayout<K> {
+
+	private final Function<K, String> shard;
+	private final Function<K, String> fileName;
+
+	private PathLayout(Function<K, String> shard, Function<K, String> fileName) {
+		this.shard = shard;
+		this.fileName = fileName;
+	}
+
+	/**
+	 * @param fileName the name of the file of a key
+	 * @return a {@link PathLayout} storing all the files in the root directory
+	 */
+	public static <K> PathLayout<K> flat(Function<K, String> fileName) {
+		return new PathLayout<>(key -> "", fileName);
+	}
+
+	/**
+	 * @param shard    the directories of a key, separated by <code>/</code>
+	 * @param fileName the name of the file of a key
+	 * @return a {@link PathLayout} storing each file in the directories of its
+	 *         shard
+	 */
+	public static <K> PathLayout<K> sharded(Function<K, String> shard, Function<K, String> fileName) {
+		return new PathLayout<>(shard, fileName);
+	}
+
+	/**
+	 * Shard the keys per date, like <code>yyyy/MM</code> for monthly buckets or
+	 * <code>uuuu/MM/dd</code> for daily ones.
+	 *
+	 * @param date    the date of a key
+	 * @param pattern the {@link DateTimeFormatter} pattern of the shard
+	 */
+	public static <K> Function<K, String> dateShard(Function<K, ? extends TemporalAccessor> date, String pattern) {
+		DateTimeFormatter formatter = DateTimeFormatter.ofPattern(pattern);
+		return key -> formatter.format(date.apply(key));
+	}
+
+	/**
+	 * Shard the keys per hash prefix, like <code>3f/a2</code> for 2 levels. Keys
+	 * are spread evenly over 256 directories per level, whatever their values.
+	 *
+	 * @param name   the value to hash, typically the file name
+	 * @param levels the number of directories
+	 */
+	public static <K> Function<K, String> hashShard(Function<K, String> name, int levels) {
+		if (levels < 1 || levels > 32) {
+			throw new IllegalArgumentException("Levels must be between 1 and 32: " + levels);
+		}
+		HexFormat hex = HexFormat.of().withDelimiter("/");
+		return key -> {
+			MessageDigest digest;
+			try {
+				digest = MessageDigest.getInstance("SHA-256");
+			} catch (NoSuchAlgorithmException cause) {
+				throw new RuntimeException("Cannot hash " + key, cause);
+			}
+			byte[] hash = digest.digest(name.apply(key).getBytes(UTF_8));
+			return hex.formatHex(hash, 0, levels);
+		};
+	}
+
+	/**
+	 * @return the path of the file of the key, relatively to the root directory
+	 */
+	public String relativePath(K key) {
+		String keyShard = shard.apply(key);
+		String keyFileName = fileName.apply(key);
+		return keyShard.isEmpty() ? keyFileName : keyShard + "/" + keyFileName;
+	}
+
+	/**
+	 * @param root the root directory of the files
+	 * @return the path resolver of a {@link FileRepository} using this
+	 *         {@link PathLayout}
+	 */
+	public Function<K, Path> in(Path root) {
+		return key -> root.resolve(relativePath(key));
+	}
+}
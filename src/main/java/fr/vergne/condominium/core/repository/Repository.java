@@ -3,6 +3,7 @@ package fr.vergne.condominium.core.repository;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
 public interface Repository<K, R> {
@@ -75,6 +76,80 @@ public interface Repository<K, R> {
 		void update(K key, R resource);
 	}
 
+	/**
+	 * A {@link Fingerprinted} {@link Repository} provides the {@link Fingerprint}
+	 * of its resources, so they can be compared without comparing the resources
+	 * themselves. It is typically stored along with the resource, so it is cheaper
+	 * to retrieve than the resource.
+	 * 
+	 * @param <K> the type of the resource key
+	 * @param <R> the type of the resource
+	 */
+	public interface Fingerprinted<K, R> extends Repository<K, R> {
+		Fingerprint fingerprint(K key) throws UnknownResourceKeyException;
+
+		/**
+		 * Provide the {@link Fingerprint}s of a {@link Repository} by serializing its
+		 * resources when requested. Use it for {@link Repository}s which don't store
+		 * them, like in-memory {@link Repository}s.
+		 * 
+		 * @param repository         the {@link Repository} to fingerprint
+		 * @param resourceSerializer the serializer of the resources, which must
+		 *                           produce the same bytes than the
+		 *                           {@link Repository} to compare with
+		 */
+		static <K, R> Fingerprinted<K, R> computing(Repository<K, R> repository,
+				Function<R, byte[]> resourceSerializer) {
+			return new Fingerprinted<K, R>() {
+
+				@Override
+				public Fingerprint fingerprint(K key) throws UnknownResourceKeyException {
+					return Fingerprint.of(resourceSerializer.apply(repository.mustGet(key)));
+				}
+
+				@Override
+				public K add(R resource) throws AlredyExistingResourceKeyException {
+					return repository.add(resource);
+				}
+
+				@Override
+				public Optional<K> key(R resource) {
+					return repository.key(resource);
+				}
+
+				@Override
+				public boolean has(K key) {
+					return repository.has(key);
+				}
+
+				@Override
+				public Optional<R> get(K key) {
+					return repository.get(key);
+				}
+
+				@Override
+				public Optional<R> remove(K key) {
+					return repository.remove(key);
+				}
+
+				@Override
+				public Stream<Map.Entry<K, R>> stream() {
+					return repository.stream();
+				}
+
+				@Override
+				public Stream<K> streamKeys() {
+					return repository.streamKeys();
+				}
+
+				@Override
+				public Stream<R> streamResources() {
+					return repository.streamResources();
+				}
+			};
+		}
+	}
+
 	@SuppressWarnings("serial")
 	public static class UnknownResourceKeyException extends RuntimeException {
 
@@ -2,11 +2,17 @@ package fr.vergne.condominium.core.repository;
 
 import static java.util.Objects.requireNonNull;
 
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.function.Function;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public interface RepositoryDiff<K, R> {
 
@@ -82,6 +88,112 @@ public interface RepositoryDiff<K, R> {
 		};
 	}
 
+	/**
+	 * Create a {@link RepositoryDiff} which only considers the resources of the
+	 * second {@link Repository}: it adds those missing in the first one and
+	 * replaces those which differ. The resources present only in the first
+	 * {@link Repository} are ignored, so this {@link RepositoryDiff} never
+	 * provides removals nor key replacements. The cost is thus proportional to
+	 * the size of the second {@link Repository}, which is relevant when it is
+	 * known to contain only new or updated resources.
+	 * 
+	 * @param repo1 the {@link Repository} to update
+	 * @param repo2 the {@link Repository} providing the updates
+	 * @return the additions and replacements to apply to the first
+	 *         {@link Repository}
+	 */
+	static <K, R> RepositoryDiff<K, R> ofUpdates(Repository<K, R> repo1, Repository<K, R> repo2) {
+		return new RepositoryDiff<K, R>() {
+			@Override
+			public Stream<ResourceDiff<K, R>> stream() {
+				return repo2.stream()//
+						.map(entry2 -> {
+							K key2 = entry2.getKey();
+							R resource2 = entry2.getValue();
+
+							Optional<R> repo1ResourceForK2 = repo1.get(key2);
+							if (repo1ResourceForK2.isEmpty()) {
+								return ResourceDiff.add(key2, resource2);
+							}
+
+							R resource1 = repo1ResourceForK2.get();
+							if (!resource1.equals(resource2)) {
+								return ResourceDiff.replaceResource(key2, resource1, resource2);
+							}
+
+							return null;
+						}).filter(x -> x != null);
+			}
+		};
+	}
+
+	/**
+	 * Create a {@link RepositoryDiff} providing the same {@link ResourceDiff}s than
+	 * {@link #of(Repository, Repository)}, but for {@link Repository}s which
+	 * stream their entries in key order. Instead of searching each resource in the
+	 * other {@link Repository}, both streams are browsed together once. The
+	 * resources present under a single key are matched through their content hash
+	 * to find the key replacements, once both streams are consumed. Key
+	 * replacements, removals and additions are thus provided last.
+	 * 
+	 * @param repo1       the {@link Repository} to update
+	 * @param repo2       the {@link Repository} providing the updates
+	 * @param keyOrder    the order in which both {@link Repository}s stream their
+	 *                    keys
+	 * @param contentHash the hash of a resource, equal for equal resources
+	 * @return the {@link ResourceDiff}s to apply to the first {@link Repository}
+	 * @throws IllegalStateException if a {@link Repository} does not stream its
+	 *                               keys in order
+	 */
+	static <K, R> RepositoryDiff<K, R> ofSorted(Repository<K, R> repo1, Repository<K, R> repo2,
+			Comparator<? super K> keyOrder, Function<? super R, ?> contentHash) {
+		return new RepositoryDiff<K, R>() {
+			@Override
+			public Stream<ResourceDiff<K, R>> stream() {
+				Stream<Entry<K, R>> entries1 = repo1.stream();
+				Stream<Entry<K, R>> entries2 = repo2.stream();
+				Function<Entry<K, R>, ?> entryHash = entry -> contentHash.apply(entry.getValue());
+				Iterator<ResourceDiff<K, R>> diffs = new MergeJoinDiffIterator<>(entries1.iterator(),
+						entries2.iterator(), keyOrder, entryHash, entryHash, false);
+				return StreamSupport.stream(Spliterators.spliteratorUnknownSize(diffs, //
+						Spliterator.ORDERED | Spliterator.NONNULL), false)//
+						.onClose(entries1::close)//
+						.onClose(entries2::close);
+			}
+		};
+	}
+
+	/**
+	 * Same as {@link #ofSorted(Repository, Repository, Comparator, Function)},
+	 * but the resources are compared through their {@link Fingerprint}, so the
+	 * resources themselves are never compared.
+	 * 
+	 * @param repo1    the {@link Repository} to update
+	 * @param repo2    the {@link Repository} providing the updates
+	 * @param keyOrder the order in which both {@link Repository}s stream their
+	 *                 keys
+	 * @return the {@link ResourceDiff}s to apply to the first {@link Repository}
+	 */
+	static <K, R> RepositoryDiff<K, R> ofSorted(Repository.Fingerprinted<K, R> repo1,
+			Repository.Fingerprinted<K, R> repo2, Comparator<? super K> keyOrder) {
+		return new RepositoryDiff<K, R>() {
+			@Override
+			public Stream<ResourceDiff<K, R>> stream() {
+				Stream<Entry<K, R>> entries1 = repo1.stream();
+				Stream<Entry<K, R>> entries2 = repo2.stream();
+				Iterator<ResourceDiff<K, R>> diffs = new MergeJoinDiffIterator<>(entries1.iterator(),
+						entries2.iterator(), keyOrder, //
+						entry -> repo1.fingerprint(entry.getKey()), //
+						entry -> repo2.fingerprint(entry.getKey()), //
+						true);
+				return StreamSupport.stream(Spliterators.spliteratorUnknownSize(diffs, //
+						Spliterator.ORDERED | Spliterator.NONNULL), false)//
+						.onClose(entries1::close)//
+						.onClose(entries2::close);
+			}
+		};
+	}
+
 	public class ResourceDiff<K, R> {
 		private final Action action;
 		private final Values<K, R> values;
@@ -0,0 +1,374 @@
+package fr.vergne.condominium.core.repository;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import fr.vergne.condominium.core.util.Serializer;
+
+/**
+ * A {@link SegmentRepository} stores its resources in a few large segment
+ * files, rather than one file per resource like {@link FileRepository}. Each
+ * segment is a sequence of records, each record containing a key and either the
+ * bytes of the resource or a removal mark:
+ *
+ * <pre>
+ * int keyLength | byte[] key | int dataLength (-1 if removed) | byte[] data
+ * </pre>
+ *
+ * Adding, updating and removing a resource only appends a record to the last
+ * segment, and a new segment is started once it exceeds the maximum segment
+ * size. The position of the last record of each key is kept in memory, so
+ * reading a resource costs a single positioned read. The index is rebuilt by
+ * scanning the segments when the repository is opened.
+ * <p>
+ * Updated and removed resources leave obsolete records in the segments.
+ * {@link #compact()} rewrites the segments with only the current records.
+ * <p>
+ * Like {@link FileRepository}, this {@link Repository} is {@link Updatable}:
+ * modifying a resource instance does not modify the stored bytes until
+ * {@link #update(Object, Object)} is called.
+ */
+public class SegmentRepository<K, R> implements Repository.Updatable<K, R>, Closeable {
+
+	private static final String EXTENSION = ".segment";
+	private static final int REMOVED = -1;
+
+	private final Function<R, K> identifier;
+	private final Function<R, byte[]> resourceSerializer;
+	private final Function<Supplier<byte[]>, R> resourceDeserializer;
+	private final Serializer<K, String> keySerializer;
+	private final Path directory;
+	private final long maxSegmentSize;
+
+	private final Map<K, Location> index = new LinkedHashMap<>();
+	private final TreeMap<Integer, FileChannel> segments = new TreeMap<>();
+
+	record Location(int segment, long position, int length) {
+	}
+
+	private SegmentRepository(Function<R, K> identifier, Function<R, byte[]> resourceSerializer,
+			Function<Supplier<byte[]>, R> resourceDeserializer, Serializer<K, String> keySerializer, Path directory,
+			long maxSegmentSize) {
+		this.identifier = identifier;
+		this.resourceSerializer = resourceSerializer;
+		this.resourceDeserializer = resourceDeserializer;
+		this.keySerializer = keySerializer;
+		this.directory = directory;
+		this.maxSegmentSize = maxSegmentSize;
+	}
+
+	/**
+	 * Open the {@link SegmentRepository} stored in the given directory, creating
+	 * it if it does not exist yet.
+	 *
+	 * @param keySerializer  the {@link Serializer} of the keys, so keys can be
+	 *                       indexed without deserializing the resources
+	 * @param directory      the directory storing the segments
+	 * @param maxSegmentSize the size after which a new segment is started
+	 */
+	public static <K, R> SegmentRepository<K, R> overBytes(Function<R, K> identifier,
+			Function<R, byte[]> resourceSerializer, Function<Supplier<byte[]>, R> resourceDeserializer,
+			Serializer<K, String> keySerializer, Path directory, long maxSegmentSize) {
+		SegmentRepository<K, R> repository = new SegmentRepository<>(identifier, resourceSerializer,
+				resourceDeserializer, keySerializer, directory, maxSegmentSize);
+		repository.open();
+		return repository;
+	}
+
+	private void open() {
+		try {
+			Files.createDirectories(directory);
+			try (Stream<Path> paths = Files.list(directory)) {
+				for (Path path : (Iterable<Path>) paths::iterator) {
+					String fileName = path.getFileName().toString();
+					if (fileName.endsWith(EXTENSION)) {
+						int segment = Integer.parseInt(fileName.substring(0, fileName.length() - EXTENSION.length()));
+						segments.put(segment, FileChannel.open(path, READ, WRITE));
+					}
+				}
+			}
+		} catch (IOException cause) {
+			throw new RuntimeException("Cannot open segments in " + directory, cause);
+		}
+		segments.keySet().forEach(this::scan);
+	}
+
+	private void scan(int segment) {
+		FileChannel channel = segments.get(segment);
+		try {
+			long size = channel.size();
+			long position = 0;
+			ByteBuffer lengthBuffer = ByteBuffer.allocate(Integer.BYTES);
+			while (position < size) {
+				int keyLength = readInt(channel, position, lengthBuffer);
+				if (keyLength < 0 || position + Integer.BYTES + keyLength + Integer.BYTES > size) {
+					break;
+				}
+				ByteBuffer keyBuffer = ByteBuffer.allocate(keyLength);
+				readFully(channel, keyBuffer, position + Integer.BYTES);
+				K key = keySerializer.deserialize(new String(keyBuffer.array(), UTF_8));
+				long dataLengthPosition = position + Integer.BYTES + keyLength;
+				int dataLength = readInt(channel, dataLengthPosition, lengthBuffer);
+				long dataPosition = dataLengthPosition + Integer.BYTES;
+				if (dataLength == REMOVED) {
+					index.remove(key);
+					position = dataPosition;
+				} else if (dataLength < 0 || dataPosition + dataLength > size) {
+					break;
+				} else {
+					index.put(key, new Location(segment, dataPosition, dataLength));
+					position = dataPosition + dataLength;
+				}
+			}
+			if (position < size) {
+				// Incomplete record, likely interrupted while writing
+				channel.truncate(position);
+			}
+		} catch (IOException cause) {
+			throw new RuntimeException("Cannot scan segment " + segment + " in " + directory, cause);
+		}
+	}
+
+	private static int readInt(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+		buffer.clear();
+		readFully(channel, buffer, position);
+		return buffer.flip().getInt();
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		int start = buffer.position();
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position() - start) == -1) {
+				throw new IOException("Unexpected end of segment at " + position);
+			}
+		}
+	}
+
+	@Override
+	public synchronized K add(R resource) throws AlredyExistingResourceKeyException {
+		K key = identifier.apply(resource);
+		if (index.containsKey(key)) {
+			throw new AlredyExistingResourceKeyException(key);
+		}
+		index.put(key, append(key, resourceSerializer.apply(resource)));
+		return key;
+	}
+
+	@Override
+	public synchronized void update(K key, R resource) {
+		if (!index.containsKey(key)) {
+			throw new UnknownResourceKeyException(key);
+		}
+		K newKey = identifier.apply(resource);
+		if (!Objects.equals(key, newKey)) {
+			throw new IllegalArgumentException("Povided key " + key + " does not match resource key " + newKey);
+		}
+		index.put(key, append(key, resourceSerializer.apply(resource)));
+	}
+
+	@Override
+	public synchronized Optional<K> key(R resource) {
+		K key = identifier.apply(resource);
+		return index.containsKey(key) ? Optional.of(key) : Optional.empty();
+	}
+
+	@Override
+	public synchronized boolean has(K key) {
+		return index.containsKey(key);
+	}
+
+	@Override
+	public synchronized Optional<R> get(K key) {
+		if (!index.containsKey(key)) {
+			return Optional.empty();
+		}
+		return Optional.of(deserialize(key));
+	}
+
+	@Override
+	public synchronized Optional<R> remove(K key) {
+		Location location = index.get(key);
+		if (location == null) {
+			return Optional.empty();
+		}
+		byte[] bytes = read(key, location);
+		append(key, null);
+		index.remove(key);
+		return Optional.of(resourceDeserializer.apply(() -> bytes));
+	}
+
+	@Override
+	public Stream<K> streamKeys() {
+		return snapshotKeys().stream();
+	}
+
+	@Override
+	public Stream<R> streamResources() {
+		return streamKeys().map(this::deserialize);
+	}
+
+	@Override
+	public Stream<Entry<K, R>> stream() {
+		return streamKeys().map(key -> Map.entry(key, deserialize(key)));
+	}
+
+	private synchronized List<K> snapshotKeys() {
+		return new ArrayList<>(index.keySet());
+	}
+
+	private R deserialize(K key) {
+		// Resolve the location when reading, since compaction may move the record
+		return resourceDeserializer.apply(() -> {
+			synchronized (this) {
+				Location location = index.get(key);
+				if (location == null) {
+					throw new UnknownResourceKeyException(key);
+				}
+				return read(key, location);
+			}
+		});
+	}
+
+	/**
+	 * Read the data of a record. Call it while holding the lock of this
+	 * {@link SegmentRepository}, so a compaction cannot close the segment while
+	 * reading it.
+	 */
+	private byte[] read(K key, Location location) {
+		FileChannel channel = segments.get(location.segment());
+		ByteBuffer buffer = ByteBuffer.allocate(location.length());
+		try {
+			readFully(channel, buffer, location.position());
+		} catch (IOException cause) {
+			throw new CannotReadSegmentException(key, location.segment(), location.position(), cause);
+		}
+		return buffer.array();
+	}
+
+	/**
+	 * Append a record to the last segment.
+	 *
+	 * @param data the bytes of the resource, or <code>null</code> to mark it as
+	 *             removed
+	 * @return the {@link Location} of the data
+	 */
+	private Location append(K key, byte[] data) {
+		try {
+			int segment = writableSegment();
+			FileChannel channel = segments.get(segment);
+			byte[] keyBytes = keySerializer.serialize(key).getBytes(UTF_8);
+			int dataLength = data == null ? REMOVED : data.length;
+			ByteBuffer buffer = ByteBuffer.allocate(2 * Integer.BYTES + keyBytes.length + Math.max(0, dataLength));
+			buffer.putInt(keyBytes.length).put(keyBytes).putInt(dataLength);
+			if (data != null) {
+				buffer.put(data);
+			}
+			buffer.flip();
+
+			long recordPosition = channel.size();
+			long position = recordPosition;
+			while (buffer.hasRemaining()) {
+				position += channel.write(buffer, position);
+			}
+			long dataPosition = recordPosition + 2 * Integer.BYTES + keyBytes.length;
+			return new Location(segment, dataPosition, Math.max(0, dataLength));
+		} catch (IOException cause) {
+			throw new CannotWriteSegmentException(key, cause);
+		}
+	}
+
+	private int writableSegment() throws IOException {
+		if (segments.isEmpty() || segments.lastEntry().getValue().size() >= maxSegmentSize) {
+			return createSegment();
+		}
+		return segments.lastKey();
+	}
+
+	private int createSegment() throws IOException {
+		int segment = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+		segments.put(segment, FileChannel.open(segmentPath(segment), CREATE, READ, WRITE));
+		return segment;
+	}
+
+	private Path segmentPath(int segment) {
+		return directory.resolve(String.format("%08d", segment) + EXTENSION);
+	}
+
+	/**
+	 * Rewrite the segments with only the current record of each resource. The
+	 * current records are first copied to new segments, and only then the former
+	 * segments are deleted, once the copies are synced to the disk. If the
+	 * compaction is interrupted, the next opening thus still finds the current
+	 * records.
+	 */
+	public synchronized void compact() {
+		List<Integer> formerSegments = new ArrayList<>(segments.keySet());
+		if (formerSegments.isEmpty()) {
+			return;
+		}
+		try {
+			createSegment();
+			for (Iterator<Entry<K, Location>> iterator = index.entrySet().iterator(); iterator.hasNext();) {
+				Entry<K, Location> entry = iterator.next();
+				entry.setValue(append(entry.getKey(), read(entry.getKey(), entry.getValue())));
+			}
+			// Don't delete the former records before the copies survive a crash
+			for (FileChannel channel : segments.tailMap(formerSegments.get(formerSegments.size() - 1), false)
+					.values()) {
+				channel.force(true);
+			}
+			for (Integer segment : formerSegments) {
+				segments.remove(segment).close();
+				Files.delete(segmentPath(segment));
+			}
+		} catch (IOException cause) {
+			throw new RuntimeException("Cannot compact segments in " + directory, cause);
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		for (FileChannel channel : segments.values()) {
+			channel.close();
+		}
+		segments.clear();
+		index.clear();
+	}
+
+	@SuppressWarnings("serial")
+	public static class CannotWriteSegmentException extends RuntimeException {
+
+		public CannotWriteSegmentException(Object key, IOException cause) {
+			super("Cannot write " + key + " in segment", cause);
+		}
+	}
+
+	@SuppressWarnings("serial")
+	public static class CannotReadSegmentException extends RuntimeException {
+
+		public CannotReadSegmentException(Object key, int segment, long position, IOException cause) {
+			super("Cannot read " + key + " in segment " + segment + " at " + position, cause);
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package fr.vergne.condominium.core.history;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import org.junit.jupiter.api.Test;
+
+class DisjointSetsTest {
+
+	@Test
+	void testUnionMergesSetsTransitively() {
+		// GIVEN
+		DisjointSets sets = new DisjointSets(5);
+
+		// WHEN
+		sets.union(0, 3);
+		sets.union(4, 1);
+		sets.union(3, 1);
+
+		// THEN
+		assertEquals(sets.find(0), sets.find(1));
+		assertEquals(sets.find(0), sets.find(3));
+		assertEquals(sets.find(0), sets.find(4));
+		assertNotEquals(sets.find(0), sets.find(2));
+	}
+}
@@ -0,0 +1,169 @@
+package fr.vergne.condominium.core.history;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import fr.vergne.condominium.core.issue.Issue;
+import fr.vergne.condominium.core.mail.Headers;
+import fr.vergne.condominium.core.mail.Mail;
+import fr.vergne.condominium.core.parser.yaml.Filter;
+import fr.vergne.condominium.core.parser.yaml.ProfilesConfiguration;
+import fr.vergne.condominium.core.repository.Fingerprint;
+
+class MailHistoryTest {
+
+	private static Mail createMail(String id, int month, int day) {
+		return createMail(id, month, day, "sender@mail.com", "receiver@mail.com");
+	}
+
+	private static Mail createMail(String id, int month, int day, String sender, String receiver) {
+		ZonedDateTime date = ZonedDateTime.of(2023, month, day, 0, 0, 0, 0, ZoneOffset.UTC);
+		Headers headers = Headers.createFromMap(Map.of("Subject", List.of("Subject " + id)),
+				(name, body) -> Stream.empty());
+		return new Mail.Base(id, List.of(id), () -> headers, null, () -> date, //
+				() -> Mail.Address.createWithCanonEmail(Optional.empty(), sender), //
+				() -> Stream.of(Mail.Address.createWithCanonEmail(Optional.empty(), receiver)));
+	}
+
+	private static MailHistory.Factory createFactory() {
+		ProfilesConfiguration.Group group = new ProfilesConfiguration.Group();
+		group.setFilter(new Filter.EmailEqualsFilter("group@mail.com"));
+		ProfilesConfiguration confProfiles = new ProfilesConfiguration();
+		confProfiles.setIndividuals(List.of());
+		confProfiles.setGroups(Map.of("Group", group));
+		Consumer<Object> logger = message -> {
+		};
+		return new MailHistory.Factory.WithPlantUml(confProfiles, logger);
+	}
+
+	/**
+	 * @return the script of each window written by a windowed {@link MailHistory}
+	 */
+	private static Map<String, String> writeWindowsScripts(List<Mail> mails) throws IOException {
+		Path scriptPath = Files.createTempFile("history", ".plantuml");
+		createFactory().create(mails, MailHistory.Windowing.perMonth(), 1).writeScript(scriptPath);
+		String script = Files.readString(scriptPath);
+		Map<String, String> windowsScripts = new LinkedHashMap<>();
+		for (String windowScript : script.split("' Window ")) {
+			if (!windowScript.isEmpty()) {
+				int windowEnd = windowScript.indexOf(System.lineSeparator());
+				String window = windowScript.substring(0, windowEnd);
+				windowsScripts.put(window, windowScript.substring(windowEnd + System.lineSeparator().length()));
+			}
+		}
+		return windowsScripts;
+	}
+
+	@Test
+	void testPerMonthWindowingSortsWindowsByMonth() {
+		// GIVEN
+		Mail march = createMail("march", 3, 1);
+		Mail january1 = createMail("january1", 1, 20);
+		Mail january2 = createMail("january2", 1, 10);
+
+		// WHEN
+		Map<String, List<Mail>> windows = MailHistory.Windowing.perMonth().split(List.of(march, january1, january2));
+
+		// THEN
+		assertEquals(List.of("2023-01", "2023-03"), List.copyOf(windows.keySet()));
+		assertEquals(List.of(january1, january2), windows.get("2023-01"));
+		assertEquals(List.of(march), windows.get("2023-03"));
+	}
+
+	@Test
+	void testPerCountWindowingFillsWindowsByDate() {
+		// GIVEN
+		Mail mail1 = createMail("1", 1, 1);
+		Mail mail2 = createMail("2", 1, 2);
+		Mail mail3 = createMail("3", 1, 3);
+
+		// WHEN
+		Map<String, List<Mail>> windows = MailHistory.Windowing.perCount(2).split(List.of(mail3, mail1, mail2));
+
+		// THEN
+		assertEquals(List.of("0001", "0002"), List.copyOf(windows.keySet()));
+		assertEquals(List.of(mail1, mail2), windows.get("0001"));
+		assertEquals(List.of(mail3), windows.get("0002"));
+	}
+
+	@Test
+	void testPerIssueWindowingHasWindowPerIssue() {
+		// GIVEN
+		ZonedDateTime date = ZonedDateTime.of(2023, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+		Issue issue1 = Issue.createEmpty("Leak", date);
+		Issue issue2 = Issue.createEmpty("Leak", date);
+		Mail mail1 = createMail("1", 1, 1);
+		Mail mail2 = createMail("2", 1, 2);
+		Mail mail3 = createMail("3", 1, 3);
+		Map<Mail, List<Issue>> mailIssues = Map.of(mail1, List.of(issue1), mail2, List.of(issue1, issue2),
+				mail3, List.of());
+
+		// WHEN
+		Map<String, List<Mail>> windows = MailHistory.Windowing.perIssue(mail -> mailIssues.get(mail).stream())
+				.split(List.of(mail1, mail2, mail3));
+
+		// THEN
+		assertEquals(List.of("Leak", "Leak-2"), List.copyOf(windows.keySet()));
+		assertEquals(List.of(mail1, mail2), windows.get("Leak"));
+		assertEquals(List.of(mail2), windows.get("Leak-2"));
+	}
+
+	@Test
+	void testUntouchedWindowKeepsSameScript() throws IOException {
+		// GIVEN
+		Mail january = createMail("january", 1, 1, "b@mail.com", "c@mail.com");
+		Mail march = createMail("march", 3, 1, "c@mail.com", "d@mail.com");
+		Map<String, String> scriptsBefore = writeWindowsScripts(List.of(january, march));
+
+		// WHEN
+		// The new address comes first, so it shifts the actors created in order
+		Mail newMarch = createMail("newMarch", 3, 2, "a@mail.com", "d@mail.com");
+		Map<String, String> scriptsAfter = writeWindowsScripts(List.of(newMarch, january, march));
+
+		// THEN
+		assertEquals(scriptsBefore.get("2023-01"), scriptsAfter.get("2023-01"));
+		assertNotEquals(scriptsBefore.get("2023-03"), scriptsAfter.get("2023-03"));
+	}
+
+	@Test
+	void testWriteSvgKeepsUnchangedWindowAndIndexesIt() throws IOException {
+		// GIVEN
+		List<Mail> mails = List.of(createMail("january", 1, 1));
+		String script = writeWindowsScripts(mails).get("2023-01");
+		Path directory = Files.createTempDirectory("history");
+		Path svgPath = directory.resolve("graph-2023-01.svg");
+		Files.writeString(svgPath, "<svg/>");
+		Files.writeString(directory.resolve("graph-2023-01.svg.sha256"),
+				Fingerprint.of(script.getBytes(UTF_8)).toString());
+		Path indexPath = directory.resolve("graph.html");
+
+		// WHEN
+		createFactory().create(mails, MailHistory.Windowing.perMonth(), 1).writeSvg(indexPath);
+
+		// THEN
+		assertEquals("<svg/>", Files.readString(svgPath));
+		String index = Files.readString(indexPath);
+		assertTrue(index.contains("<a href=\"graph-2023-01.svg\">2023-01</a>"), index);
+		try (Stream<Path> files = Files.list(directory)) {
+			Set<String> fileNames = Set.copyOf(files.map(path -> path.getFileName().toString()).toList());
+			assertEquals(Set.of("graph.html", "graph-2023-01.svg", "graph-2023-01.svg.sha256"), fileNames);
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package fr.vergne.condominium.core.mail;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+class CompactHeadersTest {
+
+	@Test
+	void testHeadersAreRetrievedWithoutCase() {
+		// GIVEN
+		Headers headers = CompactHeaders.builder(value -> value, (name, body) -> Stream.empty())//
+				.add("Subject: Hello", 7)//
+				.unfold("  world ", 1)//
+				.add("Received: first", 8)//
+				.add("RECEIVED:second", 8)//
+				.build();
+
+		// THEN
+		assertEquals("Hello world", headers.get("subject").body());
+		assertEquals(List.of("first", "second"), headers.get("Received").bodies());
+		assertFalse(headers.tryGet("To").isPresent());
+		assertEquals(List.of("Subject", "Received"), headers.stream().map(Header::name).toList());
+	}
+
+	@Test
+	void testValuesAreDecodedOnceOnlyWhenRequested() {
+		// GIVEN
+		List<String> decodedValues = new ArrayList<>();
+		Headers headers = CompactHeaders.builder(value -> {
+			decodedValues.add(value);
+			return value.toUpperCase();
+		}, (name, body) -> Stream.empty())//
+				.add("From: a@b.com", 4)//
+				.add("To: c@d.com", 2)//
+				.build();
+
+		// WHEN
+		Header to1 = headers.get("To");
+		String body1 = to1.body();
+		Header to2 = headers.get("to");
+		String body2 = to2.body();
+
+		// THEN
+		assertSame(to1, to2);
+		assertEquals("C@D.COM", body1);
+		assertEquals(body1, body2);
+		assertEquals(List.of("c@d.com"), decodedValues);
+	}
+}
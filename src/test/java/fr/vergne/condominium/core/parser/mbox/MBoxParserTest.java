@@ -0,0 +1,377 @@
+package fr.vergne.condominium.core.parser.mbox;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import fr.vergne.condominium.core.mail.Mail;
+import fr.vergne.condominium.core.mail.MimeType;
+
+class MBoxParserTest {
+
+	private static final String MBOX = ""//
+			+ "From 1@xxx Mon Jan 02 10:00:00 +0000 2023\n"//
+			+ "From: \"A B\" <a@b.com>\n"//
+			+ "To: c@d.com\n"//
+			+ "Subject: First\n"//
+			+ "\n"//
+			+ "first body\n"//
+			+ "\n"//
+			+ ">From escaped line\n"//
+			+ "\n"//
+			+ "From 2@xxx Tue Jan 03 10:00:00 +0000 2023\r\n"//
+			+ "From: e@f.com\r\n"//
+			+ "Subject: Second\r\n"//
+			+ "\r\n"//
+			+ "second body\r\n"//
+			+ "\r\n"//
+			+ "From 3@xxx Tue Jan 03 11:00:00 +0000 2023\n"//
+			+ "From: g@h.com\n"//
+			+ "Subject: Third\n"//
+			+ "\n"//
+			+ "third body\n"//
+			+ "\n";
+
+	private Path createMBox(String content) throws IOException {
+		Path path = Files.createTempFile("test", ".mbox");
+		path.toFile().deleteOnExit();
+		Files.writeString(path, content);
+		return path;
+	}
+
+	@Test
+	void testMappedMBoxProvidesSameMailsThanLinesMBox() throws IOException {
+		// GIVEN
+		Path mboxPath = createMBox(MBOX);
+		MBoxParser parser = new MBoxParser(message -> {
+		});
+
+		// WHEN
+		List<Mail> mappedMails = parser.parseMappedMBox(mboxPath).toList();
+
+		// THEN
+		List<Mail> linesMails = parser.parseMBox(mboxPath).toList();
+		assertEquals(linesMails.stream().map(Mail::lines).toList(), mappedMails.stream().map(Mail::lines).toList());
+	}
+
+	@Test
+	void testMappedMBoxParsesHeaders() throws IOException {
+		// GIVEN
+		Path mboxPath = createMBox(MBOX);
+		MBoxParser parser = new MBoxParser(message -> {
+		});
+
+		// WHEN
+		List<Mail> mails = parser.parseMappedMBox(mboxPath).toList();
+
+		// THEN
+		assertEquals(List.of("First", "Second", "Third"), mails.stream().map(Mail::subject).toList());
+		assertEquals(List.of("a@b.com", "e@f.com", "g@h.com"),
+				mails.stream().map(Mail::sender).map(Mail.Address::email).toList());
+	}
+
+	@Test
+	void testParallelMappedMBoxProvidesMailsInFileOrder() throws IOException {
+		// GIVEN
+		StringBuilder mbox = new StringBuilder();
+		int mailsCount = 100;
+		for (int i = 0; i < mailsCount; i++) {
+			mbox.append("From " + i + "@xxx Mon Jan 02 10:00:00 +0000 2023\n");
+			mbox.append("From: sender" + i + "@b.com\n");
+			mbox.append("Subject: Mail " + i + "\n");
+			mbox.append("\n");
+			mbox.append("body " + i + "\n");
+			mbox.append("\n");
+		}
+		Path mboxPath = createMBox(mbox.toString());
+		MBoxParser parser = new MBoxParser(message -> {
+		});
+
+		// WHEN
+		List<String> subjects = parser.parseMappedMBox(mboxPath).parallel().map(Mail::subject).toList();
+
+		// THEN
+		assertEquals(IntStream.range(0, mailsCount).mapToObj(i -> "Mail " + i).toList(), subjects);
+	}
+
+	@Test
+	void testMappedMBoxIncrementProvidesOnlyAppendedMails() throws IOException {
+		// GIVEN
+		Path mboxPath = createMBox(MBOX);
+		Path indexPath = Files.createTempFile("test", ".index");
+		indexPath.toFile().deleteOnExit();
+		Files.delete(indexPath);
+		MBoxParser parser = new MBoxParser(message -> {
+		});
+		parser.parseMappedMBoxIncrement(mboxPath, indexPath).commit();
+		Files.writeString(mboxPath, ""//
+				+ "From 4@xxx Wed Jan 04 10:00:00 +0000 2023\n"//
+				+ "From: i@j.com\n"//
+				+ "Subject: Fourth\n"//
+				+ "\n"//
+				+ "fourth body\n"//
+				+ "\n", StandardOpenOption.APPEND);
+
+		// WHEN
+		MBoxParser.Increment increment = parser.parseMappedMBoxIncrement(mboxPath, indexPath);
+
+		// THEN
+		assertEquals(List.of("Fourth"), increment.mails().map(Mail::subject).toList());
+	}
+
+	@Test
+	void testMappedMBoxIncrementProvidesAllMailsIfMBoxChanged() throws IOException {
+		// GIVEN
+		Path mboxPath = createMBox(MBOX);
+		Path indexPath = Files.createTempFile("test", ".index");
+		indexPath.toFile().deleteOnExit();
+		Files.delete(indexPath);
+		MBoxParser parser = new MBoxParser(message -> {
+		});
+		parser.parseMappedMBoxIncrement(mboxPath, indexPath).commit();
+		Files.writeString(mboxPath, MBOX.replace("Third", "Changed"));
+
+		// WHEN
+		MBoxParser.Increment increment = parser.parseMappedMBoxIncrement(mboxPath, indexPath);
+
+		// THEN
+		assertEquals(List.of("First", "Second", "Changed"), increment.mails().map(Mail::subject).toList());
+	}
+
+	@Test
+	void testMappedMBoxIncrementProvidesAllMailsIfMiddleMailChangedWithSameLength() throws IOException {
+		// GIVEN
+		Path mboxPath = createMBox(MBOX);
+		Path indexPath = Files.createTempFile("test", ".index");
+		indexPath.toFile().deleteOnExit();
+		Files.delete(indexPath);
+		MBoxParser parser = new MBoxParser(message -> {
+		});
+		parser.parseMappedMBoxIncrement(mboxPath, indexPath).commit();
+		Files.writeString(mboxPath, MBOX.replace("Second", "Middle"));
+
+		// WHEN
+		MBoxParser.Increment increment = parser.parseMappedMBoxIncrement(mboxPath, indexPath);
+
+		// THEN
+		assertEquals(List.of("First", "Middle", "Third"), increment.mails().map(Mail::subject).toList());
+	}
+
+	@Test
+	void testParseMailSplitsNestedMultiparts() {
+		// GIVEN
+		MBoxParser parser = new MBoxParser(message -> {
+		});
+		List<String> lines = List.of(//
+				"From 1@xxx Mon Jan 02 10:00:00 +0000 2023", //
+				"From: a@b.com", //
+				"Subject: Multipart", //
+				"Content-Type: multipart/mixed; boundary=\"outer\"", //
+				"", //
+				"This is the preamble", //
+				"--outer", //
+				"Content-Type: multipart/alternative; boundary=inner", //
+				"", //
+				"--inner", //
+				"Content-Type: text/plain; charset=UTF-8", //
+				"", //
+				"Plain text", //
+				"--inner", //
+				"Content-Type: text/html; charset=UTF-8", //
+				"", //
+				"<p>HTML text</p>", //
+				"--inner--", //
+				"--outer", //
+				"Content-Type: application/pdf; name=\"doc.pdf\"", //
+				"Content-Transfer-Encoding: base64", //
+				"", //
+				"UERGIGNvbnRlbnQ=", //
+				"--outer--", //
+				"This is the epilogue"//
+		);
+
+		// WHEN
+		Mail mail = parser.parseMail(lines);
+
+		// THEN
+		Mail.Body.Composed mixed = (Mail.Body.Composed) mail.body();
+		assertEquals(MimeType.Multipart.MIXED, mixed.mimeType());
+		List<? extends Mail.Body> mixedParts = List.copyOf(mixed.bodies());
+		assertEquals(2, mixedParts.size());
+
+		Mail.Body.Composed alternative = (Mail.Body.Composed) mixedParts.get(0);
+		assertEquals(MimeType.Multipart.ALTERNATIVE, alternative.mimeType());
+		List<String> texts = alternative.bodies().stream()//
+				.map(body -> ((Mail.Body.Textual) body).text())//
+				.toList();
+		// Like the lines of the mail, the text lines end with the line separator
+		String separator = System.lineSeparator();
+		assertEquals(List.of("Plain text" + separator, "<p>HTML text</p>" + separator), texts);
+
+		Mail.Body.Binary pdf = (Mail.Body.Binary) mixedParts.get(1);
+		assertEquals(MimeType.Application.PDF, pdf.mimeType());
+		assertEquals("PDF content", new String(pdf.bytes(), StandardCharsets.US_ASCII));
+	}
+
+	@Test
+	void testParseMailDecodesAttachmentOnDemand() throws IOException {
+		// GIVEN
+		MBoxParser parser = new MBoxParser(message -> {
+		});
+		List<String> lines = List.of(//
+				"From 1@xxx Mon Jan 02 10:00:00 +0000 2023", //
+				"From: a@b.com", //
+				"Subject: Attachment", //
+				"Content-Type: application/pdf; name=\"doc.pdf\"", //
+				"Content-Transfer-Encoding: base64", //
+				"", //
+				"UERGIGNvbnRlbnQg", //
+				"c3BsaXQgb3ZlciBs", //
+				"aW5lcw=="//
+		);
+
+		// WHEN
+		Mail.Body.Binary pdf = (Mail.Body.Binary) parser.parseMail(lines).body();
+
+		// THEN
+		byte[] expected = "PDF content split over lines".getBytes(StandardCharsets.US_ASCII);
+		assertEquals(expected.length, pdf.size());
+		try (InputStream stream = pdf.inputStream()) {
+			assertArrayEquals(expected, stream.readAllBytes());
+		}
+		assertArrayEquals(expected, pdf.bytes());
+	}
+
+	@Test
+	void testParseMailDecodesQuotedPrintable() {
+		// GIVEN
+		MBoxParser parser = new MBoxParser(message -> {
+		});
+		List<String> lines = List.of(//
+				"From 1@xxx Mon Jan 02 10:00:00 +0000 2023", //
+				"From: a@b.com", //
+				"Subject: =?UTF-8?Q?Caf=C3=A9_cr=C3=A8me?=", //
+				"Content-Type: text/plain; charset=UTF-8", //
+				"Content-Transfer-Encoding: quoted-printable", //
+				"", //
+				"Caf=C3=A9 with a soft=", //
+				" line break and trailing spaces  ", //
+				"a=3Db"//
+		);
+
+		// WHEN
+		Mail mail = parser.parseMail(lines);
+
+		// THEN
+		assertEquals("Café crème", mail.subject());
+		Mail.Body.Textual text = (Mail.Body.Textual) mail.body();
+		String separator = System.lineSeparator();
+		assertEquals("Café with a soft line break and trailing spaces" + separator + "a=b" + separator, text.text());
+	}
+
+	@Test
+	void testParseMailSplitsReceiversOutsideQuotesAndComments() {
+		// GIVEN
+		MBoxParser parser = new MBoxParser(message -> {
+		});
+		List<String> lines = List.of(//
+				"From 1@xxx Mon Jan 02 10:00:00 +0000 2023", //
+				"From: a@b.com", //
+				"To: \"Doe, John\" <John@Doe.com>, c@d.com (C, D), <e@f.com>, ", //
+				"Cc: g@h.com", //
+				"Subject: Receivers", //
+				"", //
+				"body"//
+		);
+
+		// WHEN
+		Mail mail = parser.parseMail(lines);
+
+		// THEN
+		List<String> receivers = mail.receivers().map(Object::toString).toList();
+		assertEquals(List.of("Doe, John <john@doe.com>", "C, D <c@d.com>", "<e@f.com>", "<g@h.com>"), receivers);
+	}
+
+	@Test
+	void testParseMailLinesReadsBodyOnlyWhenRequested() {
+		// GIVEN
+		MBoxParser parser = new MBoxParser(message -> {
+		});
+		List<String> lines = List.of(//
+				"From 1@xxx Mon Jan 02 10:00:00 +0000 2023", //
+				"From: a@b.com", //
+				"Subject: Stream", //
+				"Content-Type: text/plain; charset=UTF-8", //
+				"", //
+				"large body ".repeat(10000), //
+				""//
+		);
+		byte[] bytes = String.join("\n", lines).getBytes(StandardCharsets.UTF_8);
+		List<Integer> readBytesCounts = new ArrayList<>();
+		Supplier<InputStream> streamSupplier = () -> new ByteArrayInputStream(bytes) {
+			@Override
+			public void close() throws IOException {
+				readBytesCounts.add(pos);
+			}
+		};
+
+		// WHEN
+		Mail mail = parser.parseMailLines(streamSupplier);
+		String subject = mail.subject();
+
+		// THEN
+		assertEquals("Stream", subject);
+		assertEquals(1, readBytesCounts.size());
+		assertTrue(readBytesCounts.get(0) < bytes.length);
+
+		// WHEN
+		Mail.Body.Textual text = (Mail.Body.Textual) mail.body();
+
+		// THEN
+		String separator = System.lineSeparator();
+		assertEquals("large body ".repeat(10000) + separator + separator, text.text());
+		assertEquals(lines, mail.lines());
+		assertEquals(List.of(readBytesCounts.get(0), bytes.length), readBytesCounts);
+	}
+
+	@Test
+	void testTextBodyHasSameLineBreaksForCrlfAndLfMBoxes() throws IOException {
+		// GIVEN
+		String lfMBox = ""//
+				+ "From 1@xxx Mon Jan 02 10:00:00 +0000 2023\n"//
+				+ "From: a@b.com\n"//
+				+ "Subject: Text\n"//
+				+ "Content-Type: text/plain; charset=UTF-8\n"//
+				+ "\n"//
+				+ "line 1\n"//
+				+ "line 2\n";
+		Path lfPath = createMBox(lfMBox);
+		Path crlfPath = createMBox(lfMBox.replace("\n", "\r\n"));
+		MBoxParser parser = new MBoxParser(message -> {
+		});
+
+		// WHEN
+		Mail lfMail = parser.parseMappedMBox(lfPath).findFirst().get();
+		Mail crlfMail = parser.parseMappedMBox(crlfPath).findFirst().get();
+
+		// THEN
+		String lfText = ((Mail.Body.Textual) lfMail.body()).text();
+		String crlfText = ((Mail.Body.Textual) crlfMail.body()).text();
+		assertEquals(lfText, crlfText);
+		assertTrue(lfText.startsWith("line 1" + System.lineSeparator() + "line 2" + System.lineSeparator()), lfText);
+	}
+}
@@ -0,0 +1,90 @@
+package fr.vergne.condominium.core.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.LinkedHashMap;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+class CachingRepositoryTest {
+
+	private static Repository<String, String> countingGets(AtomicInteger getsCount) {
+		return new MemoryRepository<>(resource -> resource.substring(0, resource.indexOf('=')),
+				new LinkedHashMap<>()) {
+			@Override
+			public Optional<String> get(String key) {
+				getsCount.incrementAndGet();
+				return super.get(key);
+			}
+		};
+	}
+
+	@Test
+	void testGetReachesRepositoryOnlyOnMiss() {
+		// GIVEN
+		AtomicInteger getsCount = new AtomicInteger();
+		Repository<String, String> repository = countingGets(getsCount);
+		repository.add("a=1");
+		CachingRepository<String, String> cachingRepository = CachingRepository.over(repository, 10);
+
+		// WHEN
+		cachingRepository.mustGet("a");
+		cachingRepository.mustGet("a");
+		cachingRepository.mustGet("a");
+
+		// THEN
+		assertEquals(1, getsCount.get());
+		assertEquals(new CachingRepository.Stats(2, 1, 0, 1), cachingRepository.stats());
+	}
+
+	@Test
+	void testLeastRecentlyUsedResourceIsEvicted() {
+		// GIVEN
+		AtomicInteger getsCount = new AtomicInteger();
+		Repository<String, String> repository = countingGets(getsCount);
+		CachingRepository<String, String> cachingRepository = CachingRepository.over(repository, 2);
+		cachingRepository.add("a=1");
+		cachingRepository.add("b=2");
+
+		// WHEN
+		cachingRepository.mustGet("a");
+		cachingRepository.add("c=3");
+		cachingRepository.mustGet("a");
+		cachingRepository.mustGet("b");
+
+		// THEN
+		assertEquals(1, getsCount.get());
+		assertEquals(new CachingRepository.Stats(2, 1, 2, 2), cachingRepository.stats());
+	}
+
+	@Test
+	void testGetDoesNotCacheResourceRemovedWhileReading() {
+		// GIVEN
+		AtomicReference<CachingRepository<String, String>> cachingReference = new AtomicReference<>();
+		Repository<String, String> repository = new MemoryRepository<>(
+				resource -> resource.substring(0, resource.indexOf('=')), new LinkedHashMap<>()) {
+			@Override
+			public Optional<String> get(String key) {
+				Optional<String> resource = super.get(key);
+				// Another thread removes the resource once it has been read
+				cachingReference.get().remove(key);
+				return resource;
+			}
+		};
+		repository.add("a=1");
+		CachingRepository<String, String> cachingRepository = CachingRepository.over(repository, 10);
+		cachingReference.set(cachingRepository);
+
+		// WHEN
+		Optional<String> readResource = cachingRepository.get("a");
+
+		// THEN
+		assertEquals(Optional.of("a=1"), readResource);
+		assertEquals(0, cachingRepository.stats().size());
+		assertFalse(cachingRepository.has("a"));
+	}
+}
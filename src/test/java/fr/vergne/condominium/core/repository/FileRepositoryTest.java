@@ -0,0 +1,233 @@
+package fr.vergne.condominium.core.repository;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.toSet;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import fr.vergne.condominium.core.util.Serializer;
+
+class FileRepositoryTest {
+
+	private static FileRepository<String, String> create(Path directory, AtomicInteger readsCount) {
+		Function<String, Path> pathResolver = key -> directory.resolve(key + ".txt");
+		Supplier<Stream<Path>> pathFinder = () -> {
+			try {
+				return Files.list(directory).filter(path -> path.toString().endsWith(".txt")).sorted();
+			} catch (IOException cause) {
+				throw new RuntimeException("Cannot list " + directory, cause);
+			}
+		};
+		Serializer<String, String> keySerializer = new Serializer<>() {
+
+			@Override
+			public String serialize(String key) {
+				return key;
+			}
+
+			@Override
+			public String deserialize(String serial) {
+				return serial;
+			}
+		};
+		return FileRepository.overBytes(//
+				resource -> resource.substring(0, resource.indexOf('=')), //
+				resource -> resource.getBytes(UTF_8), //
+				bytes -> {
+					readsCount.incrementAndGet();
+					return new String(bytes.get(), UTF_8);
+				}, //
+				pathResolver, pathFinder, //
+				keySerializer, directory.resolve("keys.index"));
+	}
+
+	@Test
+	void testStreamKeysReadsOnlyNonIndexedFiles() throws IOException {
+		// GIVEN
+		Path directory = Files.createTempDirectory("files");
+		AtomicInteger readsCount = new AtomicInteger();
+		FileRepository<String, String> repository = create(directory, readsCount);
+		repository.add("a=1");
+		repository.add("b=2");
+		repository.remove("b");
+		Files.writeString(directory.resolve("c.txt"), "c=3");
+
+		// WHEN
+		FileRepository<String, String> reopened = create(directory, readsCount);
+		readsCount.set(0);
+		List<String> keys = reopened.streamKeys().toList();
+		List<String> keysAgain = reopened.streamKeys().toList();
+
+		// THEN
+		assertEquals(List.of("a", "c"), keys);
+		assertEquals(keys, keysAgain);
+		assertEquals(1, readsCount.get());
+	}
+
+	@Test
+	void testSessionIndexesCommittedKeys() throws IOException {
+		// GIVEN
+		Path directory = Files.createTempDirectory("files");
+		AtomicInteger readsCount = new AtomicInteger();
+		FileRepository<String, String> repository = create(directory, readsCount);
+		Repository.Session<String, String> session = repository.openSession(directory.resolve("session.journal"));
+		session.repository().add("a=1");
+		session.repository().add("b=2");
+		session.commit();
+
+		// WHEN
+		FileRepository<String, String> reopened = create(directory, readsCount);
+		readsCount.set(0);
+		List<String> keys = reopened.streamKeys().toList();
+
+		// THEN
+		assertEquals(List.of("a", "b"), keys);
+		assertEquals(0, readsCount.get());
+	}
+
+	@Test
+	void testStreamResourcesWithReadAheadPreservesOrder() throws IOException {
+		// GIVEN
+		Path directory = Files.createTempDirectory("files");
+		FileRepository<String, String> repository = create(directory, new AtomicInteger());
+		List<String> resources = IntStream.range(0, 50).mapToObj(i -> String.format("k%02d=%d", i, i)).toList();
+		resources.forEach(repository::add);
+		Function<Supplier<InputStream>, String> reader = streamSupplier -> {
+			try (InputStream stream = streamSupplier.get()) {
+				return new String(stream.readAllBytes(), UTF_8);
+			} catch (IOException cause) {
+				throw new RuntimeException(cause);
+			}
+		};
+
+		// WHEN
+		List<String> readAhead = repository.streamResourcesWithReadAhead(8, reader).toList();
+		Set<String> unordered = repository.streamResourcesUnordered(8, reader).collect(toSet());
+
+		// THEN
+		assertEquals(resources, readAhead);
+		assertEquals(Set.copyOf(resources), unordered);
+	}
+
+	@Test
+	void testFingerprintIsStoredWhenWriting() throws IOException {
+		// GIVEN
+		Path directory = Files.createTempDirectory("files");
+		AtomicInteger readsCount = new AtomicInteger();
+		FileRepository<String, String> repository = create(directory, readsCount);
+		repository.add("a=1");
+		Files.writeString(directory.resolve("a.txt"), "a=changed behind the repository");
+
+		// WHEN
+		Fingerprint fingerprint = create(directory, readsCount).fingerprint("a");
+
+		// THEN
+		assertEquals(Fingerprint.of("a=1".getBytes(UTF_8)), fingerprint);
+		assertEquals(0, readsCount.get());
+	}
+
+	@Test
+	void testSessionStoresModificationsOnlyOnCommit() throws IOException {
+		// GIVEN
+		Path directory = Files.createTempDirectory("files");
+		FileRepository<String, String> repository = create(directory, new AtomicInteger());
+		repository.add("a=1");
+		Repository.Session<String, String> session = repository.openSession(directory.resolve("session.journal"));
+
+		// WHEN
+		session.repository().add("b=2");
+		session.repository().remove("a");
+		List<String> keysBeforeCommit = repository.streamKeys().toList();
+		List<String> sessionKeys = session.repository().streamKeys().toList();
+		session.commit();
+
+		// THEN
+		assertEquals(List.of("a"), keysBeforeCommit);
+		assertEquals(List.of("b"), sessionKeys);
+		assertEquals(List.of("b"), repository.streamKeys().toList());
+		assertTrue(Files.exists(directory.resolve("session.journal")));
+	}
+
+	@Test
+	void testSessionRetiresJournalOfPreviousCommit() throws IOException {
+		// GIVEN
+		Path directory = Files.createTempDirectory("files");
+		Path journalPath = directory.resolve("session.journal");
+		FileRepository<String, String> repository = create(directory, new AtomicInteger());
+		Repository.Session<String, String> session = repository.openSession(journalPath);
+		session.repository().add("a=1");
+		session.commit();
+		session.repository().remove("a");
+		session.repository().add("a=2");
+		session.repository().add("b=3");
+
+		// WHEN
+		session.commit();
+		repository.openSession(journalPath);
+
+		// THEN
+		assertEquals(List.of("a=2", "b=3"), repository.streamResources().toList());
+		assertFalse(Files.exists(journalPath));
+	}
+
+	@Test
+	void testSessionRecoversInterruptedCommit() throws IOException {
+		// GIVEN
+		Path directory = Files.createTempDirectory("files");
+		Path journalPath = directory.resolve("session.journal");
+		FileRepository<String, String> repository = create(directory, new AtomicInteger());
+		Repository.Session<String, String> session = repository.openSession(journalPath);
+		session.repository().add("a=1");
+		session.repository().add("b=2");
+		// A directory prevents to write the file, so the commit stops in between
+		Files.createDirectory(directory.resolve("b.txt"));
+		assertThrows(FileRepository.CannotWriteFileException.class, session::commit);
+		Files.delete(directory.resolve("b.txt"));
+
+		// WHEN
+		repository.openSession(journalPath);
+
+		// THEN
+		assertEquals(List.of("a=1", "b=2"), repository.streamResources().toList());
+		assertFalse(Files.exists(journalPath));
+	}
+
+	@Test
+	void testRecoverAppliesInterruptedCommitWithoutSession() throws IOException {
+		// GIVEN
+		Path directory = Files.createTempDirectory("files");
+		Path journalPath = directory.resolve("session.journal");
+		FileRepository<String, String> repository = create(directory, new AtomicInteger());
+		Repository.Session<String, String> session = repository.openSession(journalPath);
+		session.repository().add("a=1");
+		session.repository().add("b=2");
+		// A directory prevents to write the file, so the commit stops in between
+		Files.createDirectory(directory.resolve("b.txt"));
+		assertThrows(FileRepository.CannotWriteFileException.class, session::commit);
+		Files.delete(directory.resolve("b.txt"));
+
+		// WHEN
+		FileRepository<String, String> reader = create(directory, new AtomicInteger());
+		reader.recover(journalPath);
+
+		// THEN
+		assertEquals(List.of("a=1", "b=2"), reader.streamResources().toList());
+		assertFalse(Files.exists(journalPath));
+	}
+}
@@ -0,0 +1,60 @@
+package fr.vergne.condominium.core.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class MemoryRepositoryTest {
+
+	@Test
+	void testKeyFollowsAdditionsAndRemovals() {
+		// GIVEN
+		Map<String, String> resources = new LinkedHashMap<>(Map.of("a", "x"));
+		MemoryRepository<String, String> repository = new MemoryRepository<>(resource -> resource + "2", resources);
+
+		// WHEN
+		repository.add("x");
+		Optional<String> keyWithBoth = repository.key("x");
+		repository.remove("a");
+		Optional<String> keyWithSecond = repository.key("x");
+		repository.remove("x2");
+		Optional<String> keyWithNone = repository.key("x");
+
+		// THEN
+		assertEquals(Optional.of("a"), keyWithBoth);
+		assertEquals(Optional.of("x2"), keyWithSecond);
+		assertEquals(Optional.empty(), keyWithNone);
+		assertEquals(Optional.empty(), repository.get("a"));
+		assertEquals(Optional.empty(), repository.remove("a"));
+	}
+
+	@Test
+	void testAddDoesNotHashResourcesBeforeKeyIsRequested() {
+		// GIVEN
+		AtomicInteger hashesCount = new AtomicInteger();
+		class Resource {
+			@Override
+			public int hashCode() {
+				hashesCount.incrementAndGet();
+				return 0;
+			}
+		}
+		MemoryRepository<Integer, Resource> repository = new MemoryRepository<>(System::identityHashCode,
+				new LinkedHashMap<>());
+		Resource resource = new Resource();
+
+		// WHEN
+		repository.add(resource);
+		int hashesAfterAdd = hashesCount.get();
+		Optional<Integer> key = repository.key(resource);
+
+		// THEN
+		assertEquals(0, hashesAfterAdd);
+		assertEquals(Optional.of(System.identityHashCode(resource)), key);
+	}
+}
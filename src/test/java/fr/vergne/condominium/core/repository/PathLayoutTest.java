@@ -0,0 +1,39 @@
+package fr.vergne.condominium.core.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.Test;
+
+class PathLayoutTest {
+
+	@Test
+	void testDateShardProvidesDateDirectories() {
+		// GIVEN
+		Function<LocalDate, String> shard = PathLayout.dateShard(date -> date, "yyyy/MM");
+		PathLayout<LocalDate> layout = PathLayout.sharded(shard, date -> date.getDayOfMonth() + ".txt");
+
+		// WHEN
+		String path = layout.relativePath(LocalDate.of(2023, 1, 2));
+
+		// THEN
+		assertEquals("2023/01/2.txt", path);
+	}
+
+	@Test
+	void testHashShardProvidesOneHexDirectoryPerLevel() {
+		// GIVEN
+		Function<String, String> shard = PathLayout.hashShard(name -> name, 2);
+		PathLayout<String> layout = PathLayout.sharded(shard, name -> name);
+
+		// WHEN
+		String path = layout.relativePath("file.txt");
+
+		// THEN
+		assertTrue(path.matches("[0-9a-f]{2}/[0-9a-f]{2}/file\\.txt"), path);
+		assertEquals(path, layout.relativePath("file.txt"));
+	}
+}
@@ -3,14 +3,17 @@ package fr.vergne.condominium.core.repository;
 import static java.util.Collections.emptySet;
 import static java.util.stream.Collectors.toSet;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.params.provider.Arguments.arguments;
 
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
@@ -163,6 +166,72 @@ class RepositoryDiffTest {
 		), diff.stream().collect(toSet()));
 	}
 
+	@Test
+	void testDiffOfUpdatesIgnoresRemovalsAndKeyReplacements() {
+		// GIVEN
+		Repository<Integer, String> repo1 = createRepository(Map.of(1, "removed", 3, "old", 4, "moved", 6, "same"));
+		Repository<Integer, String> repo2 = createRepository(Map.of(2, "added", 3, "new", 5, "moved", 6, "same"));
+
+		// WHEN
+		RepositoryDiff<Integer, String> diff = RepositoryDiff.ofUpdates(repo1, repo2);
+
+		// THEN
+		assertEquals(Set.of(//
+				ResourceDiff.add(2, "added"), //
+				ResourceDiff.replaceResource(3, "old", "new"), //
+				ResourceDiff.add(5, "moved")//
+		), diff.stream().collect(toSet()));
+	}
+
+	@Test
+	void testDiffOfSortedProvidesSameDiffs() {
+		// GIVEN
+		Map<Integer, String> map1 = new TreeMap<>(Map.of(1, "removed", 3, "old", 4, "moved", 6, "same"));
+		Map<Integer, String> map2 = new TreeMap<>(Map.of(2, "added", 3, "new", 5, "moved", 6, "same"));
+		Repository<Integer, String> repo1 = createRepository(map1);
+		Repository<Integer, String> repo2 = createRepository(map2);
+
+		// WHEN
+		RepositoryDiff<Integer, String> diff = RepositoryDiff.ofSorted(repo1, repo2, Comparator.naturalOrder(),
+				String::hashCode);
+
+		// THEN
+		assertEquals(RepositoryDiff.of(repo1, repo2).stream().collect(toSet()), diff.stream().collect(toSet()));
+	}
+
+	@Test
+	void testDiffOfSortedFingerprintsProvidesSameDiffs() {
+		// GIVEN
+		Map<Integer, String> map1 = new TreeMap<>(Map.of(1, "removed", 3, "old", 4, "moved", 6, "same"));
+		Map<Integer, String> map2 = new TreeMap<>(Map.of(2, "added", 3, "new", 5, "moved", 6, "same"));
+		Repository<Integer, String> repo1 = createRepository(map1);
+		Repository<Integer, String> repo2 = createRepository(map2);
+		Function<String, byte[]> serializer = String::getBytes;
+
+		// WHEN
+		RepositoryDiff<Integer, String> diff = RepositoryDiff.ofSorted(//
+				Repository.Fingerprinted.computing(repo1, serializer), //
+				Repository.Fingerprinted.computing(repo2, serializer), //
+				Comparator.naturalOrder());
+
+		// THEN
+		assertEquals(RepositoryDiff.of(repo1, repo2).stream().collect(toSet()), diff.stream().collect(toSet()));
+	}
+
+	@Test
+	void testDiffOfSortedRejectsUnsortedRepository() {
+		// GIVEN
+		Repository<Integer, String> repo1 = createRepository(new TreeMap<>(Map.of(1, "a", 2, "b")));
+		Repository<Integer, String> repo2 = createRepository(new TreeMap<>(Map.of(1, "a", 2, "b")));
+
+		// WHEN
+		RepositoryDiff<Integer, String> diff = RepositoryDiff.ofSorted(repo1, repo2, Comparator.reverseOrder(),
+				String::hashCode);
+
+		// THEN
+		assertThrows(IllegalStateException.class, () -> diff.stream().toList());
+	}
+
 	@Test
 	void testApplyOnAddition() {
 		// GIVEN
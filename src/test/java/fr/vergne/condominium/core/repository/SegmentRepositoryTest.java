@@ -0,0 +1,99 @@
+package fr.vergne.condominium.core.repository;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import fr.vergne.condominium.core.repository.Repository.AlredyExistingResourceKeyException;
+import fr.vergne.condominium.core.util.Serializer;
+
+class SegmentRepositoryTest {
+
+	private static SegmentRepository<String, String> open(Path directory, long maxSegmentSize) {
+		Serializer<String, String> keySerializer = new Serializer<>() {
+
+			@Override
+			public String serialize(String key) {
+				return key;
+			}
+
+			@Override
+			public String deserialize(String serial) {
+				return serial;
+			}
+		};
+		return SegmentRepository.overBytes(//
+				resource -> resource.substring(0, resource.indexOf('=')), //
+				resource -> resource.getBytes(UTF_8), //
+				(Supplier<byte[]> bytes) -> new String(bytes.get(), UTF_8), //
+				keySerializer, directory, maxSegmentSize);
+	}
+
+	private static long segmentsCount(Path directory) throws IOException {
+		try (Stream<Path> paths = Files.list(directory)) {
+			return paths.count();
+		}
+	}
+
+	@Test
+	void testRepositoryRetrievesResourcesOnceReopened() throws IOException {
+		// GIVEN
+		Path directory = Files.createTempDirectory("segments");
+		try (SegmentRepository<String, String> repository = open(directory, 20)) {
+			repository.add("a=1");
+			repository.add("b=2");
+			repository.add("c=3");
+			repository.update("a", "a=4");
+			repository.remove("b");
+			assertThrows(AlredyExistingResourceKeyException.class, () -> repository.add("c=5"));
+		}
+
+		// WHEN
+		try (SegmentRepository<String, String> repository = open(directory, 20)) {
+
+			// THEN
+			assertEquals(List.of("a", "c"), repository.streamKeys().toList());
+			assertEquals(List.of("a=4", "c=3"), repository.streamResources().toList());
+			assertEquals(Optional.of("a=4"), repository.get("a"));
+			assertFalse(repository.has("b"));
+			assertEquals(Optional.empty(), repository.get("b"));
+		}
+	}
+
+	@Test
+	void testCompactionRemovesObsoleteRecords() throws IOException {
+		// GIVEN
+		Path directory = Files.createTempDirectory("segments");
+		try (SegmentRepository<String, String> repository = open(directory, 20)) {
+			for (int i = 0; i < 10; i++) {
+				repository.add("k" + i + "=" + i);
+			}
+			for (int i = 0; i < 10; i += 2) {
+				repository.remove("k" + i);
+			}
+			long formerSegmentsCount = segmentsCount(directory);
+
+			// WHEN
+			repository.compact();
+
+			// THEN
+			assertEquals(List.of("k1=1", "k3=3", "k5=5", "k7=7", "k9=9"), repository.streamResources().toList());
+			assertTrue(segmentsCount(directory) < formerSegmentsCount);
+		}
+		try (SegmentRepository<String, String> repository = open(directory, 20)) {
+			assertEquals(List.of("k1", "k3", "k5", "k7", "k9"), repository.streamKeys().toList());
+		}
+	}
+}